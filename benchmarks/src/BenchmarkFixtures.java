@@ -0,0 +1,117 @@
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author csarasua
+ * Synthetic data for the benchmarks: responses of list:usercontribs, comments of edits and RDF/XML documents of items,
+ * shaped as the ones given by Wikidata. They are always the same for the same parameters (fixed random seed).
+ */
+final class BenchmarkFixtures {
+
+    // Comments of edits, as written by Wikibase (with and without autosummary, and with several languages).
+    private static final String[] COMMENTS = {
+            "/* wbsetclaim-create:2||1 */ [[Property:P131]]: [[Q10313]]",
+            "/* wbsetlabel-add:1|eu */ Donostiako Udal Liburutegia",
+            "/* wbsetlabel-set:1|es */ Biblioteca Municipal de San Sebasti\u00e1n",
+            "/* wbsetdescription-add:1|en */ library in Donostia-San Sebasti\u00e1n",
+            "/* wbsetaliases-add:1|fr */ Biblioth\u00e8que municipale de Saint-S\u00e9bastien",
+            "/* wbsetsitelink-add:1|euwiki */ Donostiako Udal Liburutegia",
+            "/* wbeditentity-create:0| */",
+            "/* wbeditentity-update:0| */",
+            "/* wbsetreference-add:2| */ [[Property:P143]]: [[Q8449]]",
+            "/* wbsetqualifier-add:1| */ [[Property:P580]]: 1 July 2015",
+            "/* wbcreateclaim-create:1| */ [[Property:P31]]: [[Q7075]]",
+            "Undid revision 225922207 by [[Special:Contributions/xxx|xxx]]",
+            null
+    };
+
+    // URIs of the RDF documents of the items.
+    private static final String ENTITY = "https://www.wikidata.org/entity/";
+    private static final String WIKI = "https://www.wikidata.org/wiki/";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Gets a page of list:usercontribs (as answered by the Wikidata API) with a continuation token.
+     * @param contributions number of contributions of the page.
+     * @return the response, in UTF-8.
+     */
+    static byte[] userContribsPage(int contributions) {
+        Random random = new Random(contributions);
+        StringBuilder json = new StringBuilder();
+        json.append("{\"batchcomplete\":\"\",\"continue\":{\"uccontinue\":\"20150703155704|225922733\",\"continue\":\"-||\"},");
+        json.append("\"query\":{\"usercontribs\":[");
+        long revId = 225922733;
+        for (int i = 0; i < contributions; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            String comment = COMMENTS[random.nextInt(COMMENTS.length)];
+            json.append("{\"userid\":2088802,\"user\":\"Participant\",\"pageid\":").append(22387768 + random.nextInt(100000));
+            json.append(",\"revid\":").append(revId - i).append(",\"parentid\":").append(revId - i - 1);
+            json.append(",\"ns\":0,\"title\":\"Q").append(20640474 + random.nextInt(5000)).append('"');
+            json.append(",\"timestamp\":\"2015-07-03T").append(String.format("%02d:%02d:%02d", 7 + i % 11, i % 60, (i * 7) % 60)).append("Z\"");
+            if (comment != null) {
+                json.append(",\"comment\":\"").append(comment.replace("\"", "\\\"")).append('"');
+            }
+            json.append(",\"size\":").append(1000 + random.nextInt(20000)).append('}');
+        }
+        json.append("]}}");
+        return utf8(json.toString());
+    }
+
+    /**
+     * Gets comments of edits, in a random order.
+     * @param count number of comments.
+     * @return the comments (some of them null, as edits without comment).
+     */
+    static List<String> comments(int count) {
+        Random random = new Random(count);
+        List<String> comments = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            comments.add(COMMENTS[random.nextInt(COMMENTS.length)]);
+        }
+        return comments;
+    }
+
+    /**
+     * Gets the RDF/XML document of an item (as given by Special:EntityData).
+     * @param statements number of statements of the item.
+     * @param match where the triple with the object looked for is: "first", "last" or "none".
+     * @param objectUri URI of the object looked for.
+     * @return the document, in UTF-8.
+     */
+    static byte[] entityRdf(int statements, String match, String objectUri) {
+        Random random = new Random(statements);
+        StringBuilder rdf = new StringBuilder();
+        rdf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        rdf.append("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"");
+        rdf.append(" xmlns:wdt=\"http://www.wikidata.org/prop/direct/\" xmlns:schema=\"http://schema.org/\">\n");
+        rdf.append("<rdf:Description rdf:about=\"").append(ENTITY).append("Q20640474\">\n");
+        if (match.equals("first")) {
+            rdf.append("  <wdt:P131 rdf:resource=\"").append(objectUri).append("\"/>\n");
+        }
+        for (int i = 0; i < statements; i++) {
+            rdf.append("  <rdfs:label xml:lang=\"l").append(i).append("\">Label ").append(i).append("</rdfs:label>\n");
+            rdf.append("  <wdt:P").append(1 + random.nextInt(2000)).append(" rdf:resource=\"").append(i % 2 == 0 ? ENTITY : WIKI).append('Q').append(1 + random.nextInt(10000000)).append("\"/>\n");
+            rdf.append("  <schema:description xml:lang=\"l").append(i).append("\">Description of the item ").append(i).append("</schema:description>\n");
+        }
+        if (match.equals("last")) {
+            rdf.append("  <wdt:P131 rdf:resource=\"").append(objectUri).append("\"/>\n");
+        }
+        rdf.append("</rdf:Description>\n</rdf:RDF>\n");
+        return utf8(rdf.toString());
+    }
+
+    private static byte[] utf8(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import dssbench.Workload;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Workload of ClassificationBenchmark: classifies comments of edits (EditTypeClassifier.parse and LanguageCodes) and,
+ * if "count" is true, counts them in a ContributionAggregates.
+ */
+public class ClassificationWorkload implements Workload {
+
+    private List<String> comments;
+    private boolean count;
+    private final Autosummary autosummary = new Autosummary();
+
+    public void setUp(Map<String, String> parameters) {
+        this.comments = BenchmarkFixtures.comments(Integer.parseInt(parameters.get("comments")));
+        this.count = Boolean.parseBoolean(parameters.get("count"));
+    }
+
+    public Object run() {
+        ContributionAggregates counts = this.count ? new ContributionAggregates() : null;
+        int languageIds = 0;
+        for (String comment : this.comments) {
+            EditTypeClassifier.parse(comment, this.autosummary);
+            int languageId = this.autosummary.language != null ? LanguageCodes.intern(this.autosummary.language) : -1;
+            if (counts != null) {
+                counts.count("Q20640474", this.autosummary.type, languageId);
+            }
+            languageIds = languageIds + languageId;
+        }
+        return counts != null ? counts : languageIds;
+    }
+
+    public void tearDown() {
+    }
+}
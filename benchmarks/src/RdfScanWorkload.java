@@ -0,0 +1,27 @@
+import dssbench.Workload;
+import org.apache.jena.riot.Lang;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Workload of RdfScanBenchmark: scans the RDF/XML document of an item for a triple with the DSS as object, as
+ * ItemLooker.isConnectedToTarget does with the document it downloads.
+ */
+public class RdfScanWorkload implements Workload {
+
+    private final RdfTripleScanner scanner = new RdfTripleScanner("https://www.wikidata.org/entity/" + ItemLooker.DSS_ITEM, null);
+    private byte[] document;
+
+    public void setUp(Map<String, String> parameters) {
+        this.document = BenchmarkFixtures.entityRdf(Integer.parseInt(parameters.get("statements")), parameters.get("match"), this.scanner.getObjectUri());
+    }
+
+    public Object run() {
+        return this.scanner.matches(new ByteArrayInputStream(this.document), Lang.RDFXML);
+    }
+
+    public void tearDown() {
+    }
+}
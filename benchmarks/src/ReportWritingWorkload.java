@@ -0,0 +1,79 @@
+import com.google.common.io.Files;
+import dssbench.Workload;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Workload of ReportWritingBenchmark: writes the contributions of a page in a report, in the format of the report of
+ * contributions of DSSWEAnalyzer. "sink" is "guava" (every line appended with Files.append, opening the file each
+ * time), "file" (FileReportSink) or "async" (AsyncReportSink over a FileReportSink).
+ */
+public class ReportWritingWorkload implements Workload {
+
+    private List<Contribution> contributions;
+    private String sink;
+    private File file;
+
+    public void setUp(Map<String, String> parameters) throws Exception {
+        this.contributions = new ArrayList<Contribution>();
+        UserContribsReader.readPage(new ByteArrayInputStream(BenchmarkFixtures.userContribsPage(Integer.parseInt(parameters.get("contributions")))), this.contributions);
+        this.sink = parameters.get("sink");
+        this.file = File.createTempFile("report", ".txt");
+    }
+
+    public Object run() throws Exception {
+        if (this.sink.equals("guava")) {
+            Files.write("", this.file, Charset.defaultCharset());
+            String ls = System.getProperty("line.separator");
+            for (Contribution contribution : this.contributions) {
+                for (String line : lines(contribution)) {
+                    Files.append(line + ls, this.file, Charset.defaultCharset());
+                }
+            }
+        } else {
+            ReportSink report = new FileReportSink(this.file, false);
+            if (this.sink.equals("async")) {
+                report = new AsyncReportSink(report);
+            }
+            try {
+                for (Contribution contribution : this.contributions) {
+                    for (String line : lines(contribution)) {
+                        report.writeLine(line);
+                    }
+                }
+            } finally {
+                report.close();
+            }
+        }
+        return this.file.length();
+    }
+
+    public void tearDown() {
+        this.file.delete();
+    }
+
+    // Lines of the report of a contribution.
+    private static List<String> lines(Contribution contribution) {
+        List<String> lines = new ArrayList<String>();
+        lines.add("--- new contribution ---");
+        lines.add("userid: " + contribution.userId);
+        lines.add("user name (user): " + contribution.user);
+        lines.add("page id: " + contribution.pageId);
+        lines.add("rev id: " + contribution.revId);
+        lines.add("parent id: " + contribution.parentId);
+        lines.add("ns: " + contribution.ns);
+        lines.add("title (Item Id): " + contribution.title);
+        lines.add("timestamp: " + contribution.timestamp);
+        if (contribution.comment != null) {
+            lines.add("comment: " + contribution.comment);
+        }
+        lines.add("size: " + contribution.size);
+        return lines;
+    }
+}
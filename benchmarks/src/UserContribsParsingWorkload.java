@@ -0,0 +1,40 @@
+import dssbench.Workload;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Workload of UserContribsParsingBenchmark: reads one page of list:usercontribs and, if "aggregate" is true, classifies
+ * and counts its contributions as processOneUserContributions does.
+ */
+public class UserContribsParsingWorkload implements Workload {
+
+    private byte[] page;
+    private boolean aggregate;
+    private final Autosummary autosummary = new Autosummary();
+
+    public void setUp(Map<String, String> parameters) {
+        this.page = BenchmarkFixtures.userContribsPage(Integer.parseInt(parameters.get("contributions")));
+        this.aggregate = Boolean.parseBoolean(parameters.get("aggregate"));
+    }
+
+    public Object run() throws Exception {
+        List<Contribution> contributions = new ArrayList<Contribution>();
+        String continueToken = UserContribsReader.readPage(new ByteArrayInputStream(this.page), contributions);
+        if (!this.aggregate) {
+            return continueToken;
+        }
+        ContributionAggregates counts = new ContributionAggregates();
+        for (Contribution contribution : contributions) {
+            EditTypeClassifier.parse(contribution.comment, this.autosummary);
+            counts.count(contribution.title, this.autosummary.type, this.autosummary.language != null ? LanguageCodes.intern(this.autosummary.language) : -1);
+        }
+        return counts;
+    }
+
+    public void tearDown() {
+    }
+}
@@ -0,0 +1,41 @@
+package dssbench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * @author csarasua
+ * Runs the benchmarks and writes their results in JSON (the format of JMH), so that the results of two versions of
+ * the analyzer can be compared.
+ * Arguments (optional): the file of the results (by default benchmarks/results/jmh-result.json) and a regular
+ * expression selecting the benchmarks to run (by default all of them, e.g. "RdfScan" for RdfScanBenchmark only).
+ * It is the main class of the jar built by benchmarks/pom.xml (java -jar benchmarks/target/benchmarks.jar).
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+
+        File resultFile = new File(args.length > 0 ? args[0] : "benchmarks/results/jmh-result.json");
+        String include = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+
+        if (resultFile.getParentFile() != null) {
+            resultFile.getParentFile().mkdirs();
+        }
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .forks(1)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.getPath())
+                .build();
+
+        new Runner(options).run();
+    }
+}
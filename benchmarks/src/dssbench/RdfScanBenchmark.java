@@ -0,0 +1,48 @@
+package dssbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author csarasua
+ * Scanning the RDF/XML document of an item for a triple with the DSS as object (see ItemLooker and RdfTripleScanner),
+ * with the matching triple at the start or at the end of the document, or without it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RdfScanBenchmark {
+
+    @Param({"20", "200"})
+    public String statements;
+
+    @Param({"first", "last", "none"})
+    public String match;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workload = Workloads.create("RdfScanWorkload", "statements", this.statements, "match", this.match);
+    }
+
+    @Benchmark
+    public Object scanItemRDF() throws Exception {
+        return this.workload.run();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.workload.tearDown();
+    }
+}
@@ -0,0 +1,48 @@
+package dssbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author csarasua
+ * Writing the contributions of a page in the report of contributions: line by line with Guava Files.append (as the
+ * first version of the analyzer), through a FileReportSink, or through an AsyncReportSink.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReportWritingBenchmark {
+
+    @Param({"100", "500"})
+    public String contributions;
+
+    @Param({"guava", "file", "async"})
+    public String sink;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workload = Workloads.create("ReportWritingWorkload", "contributions", this.contributions, "sink", this.sink);
+    }
+
+    @Benchmark
+    public Object writeReport() throws Exception {
+        return this.workload.run();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.workload.tearDown();
+    }
+}
@@ -0,0 +1,48 @@
+package dssbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author csarasua
+ * Reading one page of list:usercontribs (the JSON parsing of processOneUserContributions), alone or followed by the
+ * classification and counting of its contributions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserContribsParsingBenchmark {
+
+    @Param({"10", "100", "500"})
+    public String contributions;
+
+    @Param({"false", "true"})
+    public String aggregate;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workload = Workloads.create("UserContribsParsingWorkload", "contributions", this.contributions, "aggregate", this.aggregate);
+    }
+
+    @Benchmark
+    public Object parsePage() throws Exception {
+        return this.workload.run();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.workload.tearDown();
+    }
+}
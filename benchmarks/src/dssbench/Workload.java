@@ -0,0 +1,33 @@
+package dssbench;
+
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Code measured by a benchmark.
+ * The classes of the analyzer are in the default package, which cannot be imported, and JMH does not accept benchmarks
+ * in the default package. So the measured code is written in workloads (classes of the default package implementing
+ * this interface), and the benchmarks of this package create them by name (see Workloads) and call run.
+ */
+public interface Workload {
+
+    /**
+     * Prepares the workload (fixtures, files...). It is not measured.
+     * @param parameters parameters of the benchmark (e.g. size of the fixtures), by name.
+     * @throws Exception if the workload could not be prepared.
+     */
+    void setUp(Map<String, String> parameters) throws Exception;
+
+    /**
+     * Runs the measured code once.
+     * @return a result of the code, so that the JIT compiler does not drop it.
+     * @throws Exception if the code failed.
+     */
+    Object run() throws Exception;
+
+    /**
+     * Releases what setUp prepared. It is not measured.
+     * @throws Exception if the workload could not be released.
+     */
+    void tearDown() throws Exception;
+}
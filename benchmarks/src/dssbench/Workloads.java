@@ -0,0 +1,31 @@
+package dssbench;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Creates the workloads of the benchmarks (see Workload).
+ */
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    /**
+     * Creates and prepares a workload.
+     * @param className name of the class of the workload (in the default package).
+     * @param parameters names and values of the parameters of the benchmark, one after the other.
+     * @return the prepared workload.
+     * @throws Exception if the workload could not be created or prepared.
+     */
+    static Workload create(String className, String... parameters) throws Exception {
+        Map<String, String> parameterMap = new HashMap<String, String>();
+        for (int i = 0; i + 1 < parameters.length; i = i + 2) {
+            parameterMap.put(parameters[i], parameters[i + 1]);
+        }
+        Workload workload = (Workload) Class.forName(className).newInstance();
+        workload.setUp(parameterMap);
+        return workload;
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author csarasua
+ * Report sink that hands the written texts to a writer thread, which writes them into another sink.
+ * The analysis does not wait for the disk unless the queue of pending texts is full.
+ * An error of the writer thread is thrown by the next call to write, flush or close.
+ */
+public class AsyncReportSink implements ReportSink {
+
+    // Default maximum number of texts waiting to be written.
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    // Line separation used to write in the next line in the file.
+    private static final String ls = System.getProperty("line.separator");
+
+    // Marker put in the queue to stop the writer thread.
+    private static final Object END = new Object();
+
+    private final ReportSink target;
+    // Pending texts (String) and flush requests (CountDownLatch).
+    private final BlockingQueue<Object> queue;
+    private final Thread writerThread;
+
+    // First error of the writer thread.
+    private volatile IOException failure;
+    private boolean closed = false;
+
+
+    /**
+     * Creates the sink and starts its writer thread.
+     * @param target the sink in which the texts are finally written (used only by the writer thread).
+     * @param capacity maximum number of texts waiting to be written.
+     */
+    public AsyncReportSink(ReportSink target, int capacity) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+        this.writerThread = new Thread(new Runnable() {
+            public void run() {
+                writePending();
+            }
+        }, "report-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public AsyncReportSink(ReportSink target) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    public void write(String text) throws IOException {
+        enqueue(text);
+    }
+
+    public void writeLine(String text) throws IOException {
+        enqueue(text + ls);
+    }
+
+    public void newLine() throws IOException {
+        enqueue(ls);
+    }
+
+    public void flush() throws IOException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        enqueue(flushed);
+        try {
+            flushed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing the report");
+        }
+        checkFailure();
+    }
+
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            // Lets the writer thread write everything pending before closing the target.
+            this.queue.put(END);
+            this.writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the report");
+        } finally {
+            this.target.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Loop of the writer thread: writes the pending texts until the sink is closed.
+     * After an error the pending texts are discarded (but flush requests are still answered).
+     */
+    private void writePending() {
+        try {
+            while (true) {
+                Object pending = this.queue.take();
+                try {
+                    if (pending == END) {
+                        if (this.failure == null) {
+                            this.target.flush();
+                        }
+                        return;
+                    } else if (pending instanceof CountDownLatch) {
+                        if (this.failure == null) {
+                            this.target.flush();
+                        }
+                    } else if (this.failure == null) {
+                        this.target.write((String) pending);
+                    }
+                } catch (IOException e) {
+                    this.failure = e;
+                } finally {
+                    if (pending instanceof CountDownLatch) {
+                        ((CountDownLatch) pending).countDown();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            this.failure = new InterruptedIOException("The report writer was interrupted");
+        }
+    }
+
+    private void enqueue(Object pending) throws IOException {
+        checkFailure();
+        if (this.closed) {
+            throw new IOException("The report is closed");
+        }
+        try {
+            this.queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the report");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+}
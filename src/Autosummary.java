@@ -0,0 +1,21 @@
+/**
+ * @author csarasua
+ * Result of reading the autosummary of the comment of an edit (see EditTypeClassifier.parse).
+ * An object can be reused from one edit to the next. Objects of this class are not thread-safe.
+ */
+public class Autosummary {
+
+    // Type of the edit.
+    EditType type = EditType.NO_AUTOSUMMARY;
+
+    // Language code of the edit (e.g. of a label or description), or null if the autosummary has none.
+    String language;
+
+    public EditType getType() {
+        return type;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * @author csarasua
+ * One contribution (edit) of a user, as given by the list:usercontribs option of the Wikidata API.
+ * Numeric properties missing in the response are -1; missing texts are null.
+ * The timestamp is also kept in seconds since the epoch (epochSeconds), converted once when the contribution is read.
+ */
+public class Contribution {
+
+    final long userId;
+    final String user;
+    final long pageId;
+    final long revId;
+    final long parentId;
+    final int ns;
+    final String title;
+    final String timestamp;
+    final long epochSeconds;
+    final String comment;
+    final int size;
+
+
+    public Contribution(long userId, String user, long pageId, long revId, long parentId, int ns, String title, String timestamp, String comment, int size) {
+        this.userId = userId;
+        this.user = user;
+        this.pageId = pageId;
+        this.revId = revId;
+        this.parentId = parentId;
+        this.ns = ns;
+        this.title = title;
+        this.timestamp = timestamp;
+        this.epochSeconds = Timestamps.toEpochSeconds(timestamp);
+        this.comment = comment;
+        this.size = size;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public long getPageId() {
+        return pageId;
+    }
+
+    public long getRevId() {
+        return revId;
+    }
+
+    public long getParentId() {
+        return parentId;
+    }
+
+    public int getNs() {
+        return ns;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public long getEpochSeconds() {
+        return epochSeconds;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
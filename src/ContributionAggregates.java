@@ -0,0 +1,263 @@
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * @author csarasua
+ * Class to keep the counts of the contributions analyzed by a DSSWEAnalyzer.
+ * Each participant is analyzed into its own (partial) object, which is merged afterwards into the global one.
+ * The merge is associative and commutative: counts are added, sets are joined, and the users and titles are kept in
+ * order, so partials merged in any order and grouping (e.g. those of several processes, see writeTo) give the same
+ * counts and the same reports.
+ * Objects of this class are not thread-safe: a partial is only filled by the worker analyzing that participant.
+ */
+public class ContributionAggregates {
+
+    // Version of the binary form of the counts (see writeTo), to recognize files with counts written in another form.
+    static final int FORMAT_VERSION = 2;
+
+    // Titles of the edited non-Wikidata items, shared by all the counts (the same title is kept only once in memory).
+    private static final Interner<String> TITLES = Interners.newWeakInterner();
+
+    // Number of edits related to Wikidata items (identified by identifiers of the shape Qxxx).
+    int wikidataEditsCount = 0;
+
+    // All registered edits (not necessarily related to Wikidata items). Properties may also be edited, and also help pages etc.
+    int allEditsCount = 0;
+
+    // Number of edits creating new entities (wbeditentity).
+    int numberOfCreatedItems = 0;
+
+    // Number of edits of each type (indexed by the ordinal of EditType).
+    int[] editTypeCounts = new int[EditType.values().length];
+
+    // Number of edits in each language (labels, descriptions, aliases...) and number of edits without language.
+    LanguageCounts languageCounts = new LanguageCounts();
+    int noLanguageEdits = 0;
+
+    // Set of identifiers (title property in contributions) of all edited Wikidata items (Qxxx), kept by their number.
+    ItemIdSet setOfEditedItems = new ItemIdSet();
+    // Set of identifiers (title property in contributions) of all edited non-Wikidata items (properties, help pages etc. in Wikidata, but no Qxxx), in order.
+    Set<String> setOfEditedNonWikidataItems = new TreeSet<String>();
+
+    // Map containing <key,value> pairs, where the key is the user name and the value is the count of edits of the user name used as key (in the order of the names).
+    Map<String, Integer> mapEditsOfUsers = new TreeMap<String, Integer>();
+
+
+    /**
+     * Adds the counts of another object to the counts of this one (in any order, see the description of the class).
+     * @param other the partial counts to add.
+     */
+    public void merge(ContributionAggregates other) {
+
+        this.wikidataEditsCount += other.wikidataEditsCount;
+        this.allEditsCount += other.allEditsCount;
+        this.numberOfCreatedItems += other.numberOfCreatedItems;
+
+        for (int i = 0; i < this.editTypeCounts.length; i++) {
+            this.editTypeCounts[i] += other.editTypeCounts[i];
+        }
+
+        this.languageCounts.merge(other.languageCounts);
+        this.noLanguageEdits += other.noLanguageEdits;
+
+        this.setOfEditedItems.addAll(other.setOfEditedItems);
+        this.setOfEditedNonWikidataItems.addAll(other.setOfEditedNonWikidataItems);
+
+        for (Map.Entry<String, Integer> entry : other.mapEditsOfUsers.entrySet()) {
+            Integer previous = this.mapEditsOfUsers.get(entry.getKey());
+            this.mapEditsOfUsers.put(entry.getKey(), previous == null ? entry.getValue() : previous + entry.getValue());
+        }
+    }
+
+    /**
+     * Adds one edit to the counts (edits, types of edits, languages and edited items).
+     * @param title title of the edited page ("Qxxx" for Wikidata items).
+     * @param type type of the edit.
+     * @param languageId id of the language of the edit (see LanguageCodes), or -1 if the edit has no language.
+     */
+    public void count(String title, EditType type, int languageId) {
+
+        // Checks it the contribution is on a Wikidata (Qxxx) item and count accordingly.
+        int itemId = ItemIdSet.parse(title);
+
+        if (itemId > 0) {
+            this.setOfEditedItems.add(itemId);
+            this.wikidataEditsCount = this.wikidataEditsCount + 1;
+
+            this.editTypeCounts[type.ordinal()] = this.editTypeCounts[type.ordinal()] + 1;
+
+            if (languageId >= 0) {
+                this.languageCounts.increment(languageId);
+            } else {
+                this.noLanguageEdits = this.noLanguageEdits + 1;
+            }
+
+        } else {
+            this.setOfEditedNonWikidataItems.add(TITLES.intern(title));
+        }
+        // Count all edits.
+        this.allEditsCount = this.allEditsCount + 1;
+        if (type.isEditEntity()) {
+            this.numberOfCreatedItems = this.numberOfCreatedItems + 1;
+        }
+    }
+
+    /**
+     * Gets the number of edits of a type.
+     * @param type the type of edit.
+     * @return the number of edits of the type.
+     */
+    public int getEditTypeCount(EditType type) {
+        return this.editTypeCounts[type.ordinal()];
+    }
+
+    /**
+     * Writes the counts in a compact binary form (see readFrom): numbers as variable-length integers (1 byte up to 127),
+     * the numbers of the items in increasing order as differences from the previous one, and types of edits (only those
+     * with edits) and languages by name, so the data can be read by another run or process.
+     * @param out where the counts are written.
+     * @throws IOException if the counts could not be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+
+        writeCount(out, this.wikidataEditsCount);
+        writeCount(out, this.allEditsCount);
+        writeCount(out, this.numberOfCreatedItems);
+
+        int types = 0;
+        for (int count : this.editTypeCounts) {
+            if (count != 0) {
+                types++;
+            }
+        }
+        writeCount(out, types);
+        for (EditType type : EditType.values()) {
+            if (this.editTypeCounts[type.ordinal()] != 0) {
+                out.writeUTF(type.name());
+                writeCount(out, this.editTypeCounts[type.ordinal()]);
+            }
+        }
+
+        List<Integer> languageIds = this.languageCounts.top(Integer.MAX_VALUE);
+        writeCount(out, languageIds.size());
+        for (Integer languageId : languageIds) {
+            out.writeUTF(LanguageCodes.code(languageId));
+            writeCount(out, this.languageCounts.get(languageId));
+        }
+        writeCount(out, this.noLanguageEdits);
+
+        int[] itemIds = this.setOfEditedItems.toSortedArray();
+        writeCount(out, itemIds.length);
+        int previous = 0;
+        for (int itemId : itemIds) {
+            writeCount(out, itemId - previous);
+            previous = itemId;
+        }
+        writeStrings(out, this.setOfEditedNonWikidataItems);
+
+        writeCount(out, this.mapEditsOfUsers.size());
+        for (Map.Entry<String, Integer> entry : this.mapEditsOfUsers.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeCount(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads counts written by writeTo.
+     * @param in where the counts are read from.
+     * @return the read counts.
+     * @throws IOException if the counts could not be read.
+     */
+    public static ContributionAggregates readFrom(DataInput in) throws IOException {
+
+        ContributionAggregates aggregates = new ContributionAggregates();
+
+        aggregates.wikidataEditsCount = readCount(in);
+        aggregates.allEditsCount = readCount(in);
+        aggregates.numberOfCreatedItems = readCount(in);
+
+        int types = readCount(in);
+        for (int i = 0; i < types; i++) {
+            String name = in.readUTF();
+            int count = readCount(in);
+            EditType type;
+            try {
+                type = EditType.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                // A type that no longer exists is counted as another action.
+                type = EditType.OTHER_ACTION;
+            }
+            aggregates.editTypeCounts[type.ordinal()] += count;
+        }
+
+        int languages = readCount(in);
+        for (int i = 0; i < languages; i++) {
+            String code = in.readUTF();
+            aggregates.languageCounts.add(LanguageCodes.intern(code), readCount(in));
+        }
+        aggregates.noLanguageEdits = readCount(in);
+
+        int items = readCount(in);
+        int itemId = 0;
+        for (int i = 0; i < items; i++) {
+            itemId += readCount(in);
+            aggregates.setOfEditedItems.add(itemId);
+        }
+        readStrings(in, aggregates.setOfEditedNonWikidataItems);
+
+        int users = readCount(in);
+        for (int i = 0; i < users; i++) {
+            String user = in.readUTF();
+            aggregates.mapEditsOfUsers.put(user, readCount(in));
+        }
+
+        return aggregates;
+    }
+
+    private static void writeStrings(DataOutput out, Set<String> strings) throws IOException {
+        writeCount(out, strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static void readStrings(DataInput in, Set<String> strings) throws IOException {
+        int size = readCount(in);
+        for (int i = 0; i < size; i++) {
+            strings.add(TITLES.intern(in.readUTF()));
+        }
+    }
+
+    // Writes a number that is not negative in 7 bits per byte, the lowest first; the highest bit tells if more bytes follow.
+    private static void writeCount(DataOutput out, int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Negative count: " + count);
+        }
+        while (count > 0x7F) {
+            out.writeByte((count & 0x7F) | 0x80);
+            count = count >>> 7;
+        }
+        out.writeByte(count);
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = 0;
+        for (int shift = 0; shift < 35; shift = shift + 7) {
+            int b = in.readUnsignedByte();
+            count |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return count;
+            }
+        }
+        throw new IOException("Malformed count");
+    }
+}
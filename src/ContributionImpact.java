@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * @author csarasua
+ * Bytes added and removed by the contributions of one window. The size given with a contribution is the size of the
+ * page after the edit, so the byte delta of an edit is that size minus the size of its parent revision (the page
+ * before the edit; 0 if the edit created the page).
+ * The deltas are totaled for all the edits, by user and by edited page, and the edits are counted in ranges of deltas
+ * (see RANGE_ENDS), for all the edits, for every user and for every page.
+ * The deltas of the contributions of a store are computed by measure. Objects of this class are not thread-safe.
+ */
+public class ContributionImpact {
+
+    // Largest delta of every range in which the edits are counted; the last range has no end (deltas over 9999).
+    static final long[] RANGE_ENDS = {-10000, -1000, -100, -1, 0, 99, 999, 9999};
+    public static final int RANGES = RANGE_ENDS.length + 1;
+
+    /**
+     * Totals of the byte deltas of the edits of one user or one page.
+     */
+    public static final class Totals {
+        int edits = 0;
+        long bytesAdded = 0;
+        long bytesRemoved = 0;
+        // Edits in every range of deltas.
+        final int[] rangeCounts = new int[RANGES];
+
+        Totals() {
+        }
+
+        void count(long delta, int range) {
+            this.edits++;
+            if (delta > 0) {
+                this.bytesAdded += delta;
+            } else {
+                this.bytesRemoved -= delta;
+            }
+            this.rangeCounts[range]++;
+        }
+
+        void merge(Totals other) {
+            this.edits += other.edits;
+            this.bytesAdded += other.bytesAdded;
+            this.bytesRemoved += other.bytesRemoved;
+            for (int range = 0; range < RANGES; range++) {
+                this.rangeCounts[range] += other.rangeCounts[range];
+            }
+        }
+
+        public int getEdits() {
+            return edits;
+        }
+
+        public long getBytesAdded() {
+            return bytesAdded;
+        }
+
+        public long getBytesRemoved() {
+            return bytesRemoved;
+        }
+
+        public long getNetBytes() {
+            return bytesAdded - bytesRemoved;
+        }
+
+        public int getRangeCount(int range) {
+            return rangeCounts[range];
+        }
+    }
+
+    // All the edits with a delta.
+    private final Totals all = new Totals();
+    // Edits whose parent revision has no known size (deleted, or not in the cache of responses in offline mode).
+    private int unresolvedEdits = 0;
+    // Totals by user and by page (title), in the order of their names.
+    private final Map<String, Totals> users = new TreeMap<String, Totals>();
+    private final Map<String, Totals> pages = new TreeMap<String, Totals>();
+
+
+    /**
+     * Adds one edit.
+     * @param user the user who made the edit.
+     * @param title title of the edited page.
+     * @param delta bytes of the page after the edit minus bytes before it.
+     */
+    public void count(String user, String title, long delta) {
+        int range = rangeOf(delta);
+        this.all.count(delta, range);
+
+        Totals userTotals = this.users.get(user);
+        if (userTotals == null) {
+            userTotals = new Totals();
+            this.users.put(user, userTotals);
+        }
+        userTotals.count(delta, range);
+
+        Totals pageTotals = this.pages.get(title);
+        if (pageTotals == null) {
+            pageTotals = new Totals();
+            this.pages.put(title, pageTotals);
+        }
+        pageTotals.count(delta, range);
+    }
+
+    /**
+     * Adds one edit whose delta is not known.
+     */
+    public void countUnresolved() {
+        this.unresolvedEdits++;
+    }
+
+    /**
+     * Adds the deltas of another object to the deltas of this one (e.g. those of the store of another shard).
+     * @param other the deltas to add.
+     */
+    public void merge(ContributionImpact other) {
+        this.all.merge(other.all);
+        this.unresolvedEdits += other.unresolvedEdits;
+        mergeTotals(this.users, other.users);
+        mergeTotals(this.pages, other.pages);
+    }
+
+    private static void mergeTotals(Map<String, Totals> totals, Map<String, Totals> other) {
+        for (Map.Entry<String, Totals> entry : other.entrySet()) {
+            Totals kept = totals.get(entry.getKey());
+            if (kept == null) {
+                kept = new Totals();
+                totals.put(entry.getKey(), kept);
+            }
+            kept.merge(entry.getValue());
+        }
+    }
+
+    public Totals getTotals() {
+        return all;
+    }
+
+    public int getUnresolvedEdits() {
+        return unresolvedEdits;
+    }
+
+    /**
+     * Gets the totals of every user, in the order of their names.
+     */
+    public Map<String, Totals> getUsers() {
+        return Collections.unmodifiableMap(users);
+    }
+
+    /**
+     * Gets the totals of every edited page, from the page with most bytes added (pages with the same bytes added in the
+     * order of their titles).
+     */
+    public List<Map.Entry<String, Totals>> getPagesByBytesAdded() {
+        List<Map.Entry<String, Totals>> byBytesAdded = new ArrayList<Map.Entry<String, Totals>>(this.pages.entrySet());
+        // The sort is stable: pages with the same bytes added stay in the order of their titles.
+        Collections.sort(byBytesAdded, new Comparator<Map.Entry<String, Totals>>() {
+            public int compare(Map.Entry<String, Totals> a, Map.Entry<String, Totals> b) {
+                long added = a.getValue().bytesAdded;
+                long otherAdded = b.getValue().bytesAdded;
+                return added == otherAdded ? 0 : (added > otherAdded ? -1 : 1);
+            }
+        });
+        return byBytesAdded;
+    }
+
+    /**
+     * Gets the range of deltas of a delta (see RANGE_ENDS).
+     */
+    static int rangeOf(long delta) {
+        int range = 0;
+        while (range < RANGE_ENDS.length && delta > RANGE_ENDS[range]) {
+            range++;
+        }
+        return range;
+    }
+
+    /**
+     * Gets a readable description of a range of deltas, e.g. "-99..-1", "0" or ">=10000".
+     */
+    public static String rangeLabel(int range) {
+        if (range == 0) {
+            return "<=" + RANGE_ENDS[0];
+        }
+        if (range == RANGE_ENDS.length) {
+            return ">=" + (RANGE_ENDS[range - 1] + 1);
+        }
+        long first = RANGE_ENDS[range - 1] + 1;
+        long last = RANGE_ENDS[range];
+        return first == last ? Long.toString(first) : first + ".." + last;
+    }
+
+    /**
+     * Computes the byte deltas of the contributions of a store in some windows.
+     * The size of the parent revision of an edit is taken from the store whenever the parent is there too, which is the
+     * case of consecutive edits of the same user in the same page: only the sizes of the other parents (e.g. the edit
+     * before the first one of the user in the page) are asked to the Wikidata API, in batches (see
+     * ItemLooker.lookUpRevisionSizes). A revision kept twice in the store is counted once, and the edits whose parent
+     * size could not be asked (e.g. its batch failed) are counted without delta.
+     * @param store the contributions.
+     * @param windows the windows (an edit is counted in every window it falls in).
+     * @param concurrentRequests number of requests of sizes sent at the same time.
+     * @param cache cache of responses (null: no cache).
+     * @return the deltas of every window, in the order of the windows.
+     * @throws IOException if the thread was interrupted while asking the sizes.
+     */
+    public static ContributionImpact[] measure(ContributionStore store, List<TimeWindow> windows, int concurrentRequests, ResponseCache cache) throws IOException {
+
+        int rows = store.size();
+
+        // Revisions of the store in order (without repetitions), and the size of every one of them.
+        long[] revIds = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            revIds[row] = store.getRevId(row);
+        }
+        Arrays.sort(revIds);
+        int revisions = 0;
+        for (int i = 0; i < rows; i++) {
+            if (revisions == 0 || revIds[i] != revIds[revisions - 1]) {
+                revIds[revisions++] = revIds[i];
+            }
+        }
+        int[] sizes = new int[revisions];
+        for (int row = 0; row < rows; row++) {
+            sizes[Arrays.binarySearch(revIds, 0, revisions, store.getRevId(row))] = store.getSize(row);
+        }
+
+        // Parents of the counted edits that are not in the store.
+        Set<Long> missingParents = new HashSet<Long>();
+        for (int row = 0; row < rows; row++) {
+            long parentId = store.getParentId(row);
+            if (parentId > 0 && inSomeWindow(windows, store.getEpochSeconds(row)) && Arrays.binarySearch(revIds, 0, revisions, parentId) < 0) {
+                missingParents.add(parentId);
+            }
+        }
+        Map<Long, Integer> parentSizes = missingParents.isEmpty() ? new HashMap<Long, Integer>() : ItemLooker.lookUpRevisionSizes(missingParents, concurrentRequests, cache);
+
+        ContributionImpact[] impacts = new ContributionImpact[windows.size()];
+        for (int w = 0; w < impacts.length; w++) {
+            impacts[w] = new ContributionImpact();
+        }
+
+        BitSet counted = new BitSet(revisions);
+        for (int row = 0; row < rows; row++) {
+            long epochSeconds = store.getEpochSeconds(row);
+            if (!inSomeWindow(windows, epochSeconds)) {
+                continue;
+            }
+            int revision = Arrays.binarySearch(revIds, 0, revisions, store.getRevId(row));
+            if (counted.get(revision)) {
+                continue;
+            }
+            counted.set(revision);
+
+            long parentId = store.getParentId(row);
+            Integer parentSize;
+            if (parentId <= 0) {
+                // The edit created the page.
+                parentSize = 0;
+            } else {
+                int parent = Arrays.binarySearch(revIds, 0, revisions, parentId);
+                parentSize = parent >= 0 ? Integer.valueOf(sizes[parent]) : parentSizes.get(parentId);
+            }
+
+            String user = parentSize == null ? null : store.getUser(row);
+            String title = parentSize == null ? null : store.getTitle(row);
+            for (int w = 0; w < impacts.length; w++) {
+                if (windows.get(w).contains(epochSeconds)) {
+                    if (parentSize == null) {
+                        impacts[w].countUnresolved();
+                    } else {
+                        impacts[w].count(user, title, (long) store.getSize(row) - parentSize);
+                    }
+                }
+            }
+        }
+        return impacts;
+    }
+
+    private static boolean inSomeWindow(List<TimeWindow> windows, long epochSeconds) {
+        for (TimeWindow window : windows) {
+            if (window.contains(epochSeconds)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
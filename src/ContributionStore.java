@@ -0,0 +1,299 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author csarasua
+ * Local store of the contributions read by an analyzer, kept by columns so that the counts of any period of time,
+ * participant or type of edit can be computed again without asking the Wikidata API (see aggregate).
+ * Every property is kept in its own file of fixed-width values, one value per contribution (row):
+ * revision, parent and page ids, namespace, timestamp (seconds since the epoch), size, type of edit and language of the
+ * edit, user and title. The texts (type, language, user and title) are kept as numbers of a StoreDictionary.
+ * The columns are read through memory-mapped buffers, so the counts are computed directly on the files, without
+ * building a Contribution per row. Contributions are added with a ContributionStoreWriter.
+ * Objects of this class are read-only and can be used by several threads at the same time.
+ */
+public class ContributionStore {
+
+    // Columns of the store (index in COLUMN_FILES and COLUMN_WIDTHS).
+    static final int REV_ID = 0;
+    static final int PARENT_ID = 1;
+    static final int PAGE_ID = 2;
+    static final int NS = 3;
+    static final int EPOCH = 4;
+    static final int SIZE = 5;
+    static final int TYPE = 6;
+    static final int LANGUAGE = 7;
+    static final int USER = 8;
+    static final int TITLE = 9;
+
+    static final String[] COLUMN_FILES = {"revid.col", "parentid.col", "pageid.col", "ns.col", "epoch.col", "size.col", "type.col", "lang.col", "user.col", "title.col"};
+    // Bytes of one value of each column.
+    static final int[] COLUMN_WIDTHS = {8, 8, 8, 4, 8, 4, 1, 2, 4, 4};
+
+    // Dictionaries of the text columns.
+    static final String USERS_FILE = "users.dict";
+    static final String TITLES_FILE = "titles.dict";
+    static final String LANGUAGES_FILE = "langs.dict";
+    static final String TYPES_FILE = "types.dict";
+
+    private final int rows;
+
+    private final LongBuffer revIds;
+    private final LongBuffer parentIds;
+    private final LongBuffer pageIds;
+    private final IntBuffer namespaces;
+    private final LongBuffer epochs;
+    private final IntBuffer sizes;
+    private final ByteBuffer types;
+    private final ShortBuffer languages;
+    private final IntBuffer users;
+    private final IntBuffer titles;
+
+    private final StoreDictionary userDictionary;
+    private final StoreDictionary titleDictionary;
+
+    // Type of edit and id of the language (see LanguageCodes) of every number of the type and language dictionaries.
+    private final EditType[] typeOfId;
+    private final int[] languageOfId;
+
+
+    /**
+     * Opens a store to read.
+     * @param directory directory of the store (written by a ContributionStoreWriter).
+     * @throws IOException if the store could not be read.
+     */
+    public ContributionStore(File directory) throws IOException {
+
+        if (!directory.isDirectory()) {
+            throw new IOException("There is no store in " + directory);
+        }
+
+        FileChannel[] channels = new FileChannel[COLUMN_FILES.length];
+        ByteBuffer[] columns = new ByteBuffer[COLUMN_FILES.length];
+        try {
+            for (int c = 0; c < COLUMN_FILES.length; c++) {
+                File file = new File(directory, COLUMN_FILES[c]);
+                if (!file.isFile()) {
+                    throw new IOException("The store in " + directory + " has no column " + COLUMN_FILES[c]);
+                }
+                channels[c] = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+            // Rows written in all the columns (a row half written by an interrupted run is not read).
+            this.rows = completeRows(channels);
+            for (int c = 0; c < COLUMN_FILES.length; c++) {
+                // The mapping stays valid after the channel is closed.
+                MappedByteBuffer column = channels[c].map(FileChannel.MapMode.READ_ONLY, 0, (long) this.rows * COLUMN_WIDTHS[c]);
+                columns[c] = column;
+            }
+        } finally {
+            for (FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+
+        this.revIds = columns[REV_ID].asLongBuffer();
+        this.parentIds = columns[PARENT_ID].asLongBuffer();
+        this.pageIds = columns[PAGE_ID].asLongBuffer();
+        this.namespaces = columns[NS].asIntBuffer();
+        this.epochs = columns[EPOCH].asLongBuffer();
+        this.sizes = columns[SIZE].asIntBuffer();
+        this.types = columns[TYPE];
+        this.languages = columns[LANGUAGE].asShortBuffer();
+        this.users = columns[USER].asIntBuffer();
+        this.titles = columns[TITLE].asIntBuffer();
+
+        this.userDictionary = new StoreDictionary(new File(directory, USERS_FILE), false);
+        this.titleDictionary = new StoreDictionary(new File(directory, TITLES_FILE), false);
+
+        StoreDictionary typeDictionary = new StoreDictionary(new File(directory, TYPES_FILE), false);
+        this.typeOfId = new EditType[typeDictionary.size()];
+        for (int id = 0; id < this.typeOfId.length; id++) {
+            try {
+                this.typeOfId[id] = EditType.valueOf(typeDictionary.valueOf(id));
+            } catch (IllegalArgumentException e) {
+                // A type that no longer exists is counted as another action.
+                this.typeOfId[id] = EditType.OTHER_ACTION;
+            }
+        }
+
+        StoreDictionary languageDictionary = new StoreDictionary(new File(directory, LANGUAGES_FILE), false);
+        this.languageOfId = new int[languageDictionary.size()];
+        for (int id = 0; id < this.languageOfId.length; id++) {
+            this.languageOfId[id] = LanguageCodes.intern(languageDictionary.valueOf(id));
+        }
+    }
+
+    /**
+     * Gets the number of contributions (rows) of the store.
+     */
+    public int size() {
+        return this.rows;
+    }
+
+    public long getRevId(int row) {
+        return this.revIds.get(row);
+    }
+
+    public long getParentId(int row) {
+        return this.parentIds.get(row);
+    }
+
+    public long getPageId(int row) {
+        return this.pageIds.get(row);
+    }
+
+    public int getNs(int row) {
+        return this.namespaces.get(row);
+    }
+
+    public long getEpochSeconds(int row) {
+        return this.epochs.get(row);
+    }
+
+    public int getSize(int row) {
+        return this.sizes.get(row);
+    }
+
+    public EditType getType(int row) {
+        return this.typeOfId[this.types.get(row)];
+    }
+
+    /**
+     * Gets the language of a row.
+     * @return the id of the language (see LanguageCodes), or -1 if the edit has no language.
+     */
+    public int getLanguageId(int row) {
+        int language = this.languages.get(row);
+        return language >= 0 ? this.languageOfId[language] : -1;
+    }
+
+    public String getUser(int row) {
+        return this.userDictionary.valueOf(this.users.get(row));
+    }
+
+    public String getTitle(int row) {
+        return this.titleDictionary.valueOf(this.titles.get(row));
+    }
+
+    /**
+     * Counts the contributions of the store in a period of time, optionally only of one user or of one type of edit.
+     * The columns are read directly from the mapped files; the texts are only read for the rows that are counted.
+     * @param fromEpoch start of the period (seconds since the epoch, included).
+     * @param toEpoch end of the period (seconds since the epoch, included).
+     * @param user name of the user whose contributions are counted (null: all the users).
+     * @param type type of the counted edits (null: all the types).
+     * @return the counts, with the number of edits of every user that has contributions in the period.
+     */
+    public ContributionAggregates aggregate(long fromEpoch, long toEpoch, String user, EditType type) {
+
+        int userId = -1;
+        if (user != null) {
+            userId = this.userDictionary.find(user);
+            if (userId < 0) {
+                return new ContributionAggregates();
+            }
+        }
+        String[] names = new String[this.userDictionary.size()];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = this.userDictionary.valueOf(id);
+        }
+        return aggregate(fromEpoch, toEpoch, userId, type, names);
+    }
+
+    /**
+     * Counts the contributions of the participants in a window, as processByUsers does: the edits of every user are
+     * counted for the participant it matches (e.g. the edits of an IP address for the IP ranges of a participant), and
+     * the contributions of users that match no participant are not counted.
+     * @param window the window.
+     * @param participants the participants.
+     * @return the counts, with the number of edits of every participant that has contributions in the window.
+     */
+    public ContributionAggregates aggregate(TimeWindow window, ParticipantMatcher participants) {
+        String[] participantOfUser = new String[this.userDictionary.size()];
+        for (int id = 0; id < participantOfUser.length; id++) {
+            participantOfUser[id] = participants.match(this.userDictionary.valueOf(id));
+        }
+        return aggregate(window.getStartEpoch(), window.getEndEpoch(), -1, null, participantOfUser);
+    }
+
+    /**
+     * Counts the contributions of the store in a period of time (see aggregate).
+     * @param userId number of the user whose contributions are counted in the dictionary (-1: all the users).
+     * @param keyOfUser name under which the edits of every user are counted, indexed by the number of the user in the
+     *                  dictionary (null: the contributions of the user are not counted).
+     */
+    private ContributionAggregates aggregate(long fromEpoch, long toEpoch, int userId, EditType type, String[] keyOfUser) {
+
+        ContributionAggregates aggregates = new ContributionAggregates();
+
+        // Edits counted for every user (indexed by the number of the user in the dictionary).
+        int[] editsOfUsers = new int[this.userDictionary.size()];
+
+        for (int row = 0; row < this.rows; row++) {
+            long epoch = this.epochs.get(row);
+            if (epoch < fromEpoch || epoch > toEpoch) {
+                continue;
+            }
+            int rowUser = this.users.get(row);
+            if ((userId >= 0 && rowUser != userId) || keyOfUser[rowUser] == null) {
+                continue;
+            }
+            EditType rowType = this.typeOfId[this.types.get(row)];
+            if (type != null && rowType != type) {
+                continue;
+            }
+            aggregates.count(this.titleDictionary.valueOf(this.titles.get(row)), rowType, getLanguageId(row));
+            editsOfUsers[rowUser]++;
+        }
+
+        for (int id = 0; id < editsOfUsers.length; id++) {
+            if (editsOfUsers[id] > 0) {
+                // Several users may be counted under the same name (e.g. the IP addresses of a range).
+                Integer edits = aggregates.mapEditsOfUsers.get(keyOfUser[id]);
+                aggregates.mapEditsOfUsers.put(keyOfUser[id], edits == null ? editsOfUsers[id] : edits + editsOfUsers[id]);
+            }
+        }
+        return aggregates;
+    }
+
+    /**
+     * Counts the contributions of the store in a window (see aggregate).
+     */
+    public ContributionAggregates aggregate(TimeWindow window, String user, EditType type) {
+        return aggregate(window.getStartEpoch(), window.getEndEpoch(), user, type);
+    }
+
+    /**
+     * Deletes the files of a store.
+     * @param directory directory of the store.
+     */
+    static void delete(File directory) {
+        for (String column : COLUMN_FILES) {
+            new File(directory, column).delete();
+        }
+        new File(directory, USERS_FILE).delete();
+        new File(directory, TITLES_FILE).delete();
+        new File(directory, LANGUAGES_FILE).delete();
+        new File(directory, TYPES_FILE).delete();
+    }
+
+    /**
+     * Gets the number of rows written in all the columns: the number of values of the shortest column.
+     */
+    static int completeRows(FileChannel[] channels) throws IOException {
+        long rows = Integer.MAX_VALUE;
+        for (int c = 0; c < channels.length; c++) {
+            rows = Math.min(rows, channels[c].size() / COLUMN_WIDTHS[c]);
+        }
+        return (int) rows;
+    }
+}
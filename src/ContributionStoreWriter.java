@@ -0,0 +1,153 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author csarasua
+ * Writer of a ContributionStore: appends the contributions read by an analyzer to the columns of the store.
+ * Each column is written through its own buffer and FileChannel; the dictionaries are written before the columns that
+ * refer to them, so the store is always readable, also if the run is interrupted (a row half written is dropped when
+ * the store is opened again).
+ * A store opened to append keeps its rows and skips the contributions it already has (same revision id), so a run
+ * that goes on after an interruption (see ProgressJournal) does not add twice the pages it reads again.
+ * The writer can be used by several threads at the same time.
+ */
+public class ContributionStoreWriter {
+
+    // Number of rows kept in the buffers before they are written.
+    private static final int ROWS_PER_FLUSH = 4096;
+
+    private final FileChannel[] channels = new FileChannel[ContributionStore.COLUMN_FILES.length];
+    private final ByteBuffer[] buffers = new ByteBuffer[ContributionStore.COLUMN_FILES.length];
+
+    private final StoreDictionary users;
+    private final StoreDictionary titles;
+    private final StoreDictionary languages;
+    private final StoreDictionary types;
+
+    // Revision ids of the rows of the store, to skip contributions that are already there.
+    private final Set<Long> revIds = new HashSet<Long>();
+
+    private int rows;
+    private int bufferedRows = 0;
+
+
+    /**
+     * Opens a store to write.
+     * @param directory directory of the store (created if it does not exist).
+     * @param append true to keep the rows of the store, false to start it again.
+     * @throws IOException if the store could not be opened.
+     */
+    public ContributionStoreWriter(File directory, boolean append) throws IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("The store directory " + directory + " could not be created");
+        }
+        if (!append) {
+            ContributionStore.delete(directory);
+        }
+
+        this.users = new StoreDictionary(new File(directory, ContributionStore.USERS_FILE), true);
+        this.titles = new StoreDictionary(new File(directory, ContributionStore.TITLES_FILE), true);
+        this.languages = new StoreDictionary(new File(directory, ContributionStore.LANGUAGES_FILE), true);
+        this.types = new StoreDictionary(new File(directory, ContributionStore.TYPES_FILE), true);
+
+        for (int c = 0; c < this.channels.length; c++) {
+            this.channels[c] = FileChannel.open(new File(directory, ContributionStore.COLUMN_FILES[c]).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffers[c] = ByteBuffer.allocate(ROWS_PER_FLUSH * ContributionStore.COLUMN_WIDTHS[c]);
+        }
+
+        // Complete rows of the store: the shortest column (the rest of the other columns was written by an interrupted run).
+        this.rows = ContributionStore.completeRows(this.channels);
+        for (int c = 0; c < this.channels.length; c++) {
+            this.channels[c].truncate((long) this.rows * ContributionStore.COLUMN_WIDTHS[c]);
+            this.channels[c].position((long) this.rows * ContributionStore.COLUMN_WIDTHS[c]);
+        }
+
+        if (this.rows > 0) {
+            ByteBuffer revIdColumn = this.channels[ContributionStore.REV_ID].map(FileChannel.MapMode.READ_ONLY, 0, (long) this.rows * 8);
+            for (int row = 0; row < this.rows; row++) {
+                this.revIds.add(revIdColumn.getLong(row * 8));
+            }
+        }
+    }
+
+    /**
+     * Adds a contribution to the store (if it is not already there).
+     * @param contribution the contribution.
+     * @param autosummary type and language of the contribution (see EditTypeClassifier.parse).
+     * @throws IOException if the store could not be written.
+     */
+    public synchronized void append(Contribution contribution, Autosummary autosummary) throws IOException {
+
+        if (contribution.revId != -1 && !this.revIds.add(contribution.revId)) {
+            return;
+        }
+
+        this.buffers[ContributionStore.REV_ID].putLong(contribution.revId);
+        this.buffers[ContributionStore.PARENT_ID].putLong(contribution.parentId);
+        this.buffers[ContributionStore.PAGE_ID].putLong(contribution.pageId);
+        this.buffers[ContributionStore.NS].putInt(contribution.ns);
+        this.buffers[ContributionStore.EPOCH].putLong(contribution.epochSeconds);
+        this.buffers[ContributionStore.SIZE].putInt(contribution.size);
+        this.buffers[ContributionStore.TYPE].put((byte) this.types.idOf(autosummary.type.name()));
+        this.buffers[ContributionStore.LANGUAGE].putShort((short) (autosummary.language != null ? this.languages.idOf(autosummary.language) : -1));
+        this.buffers[ContributionStore.USER].putInt(this.users.idOf(contribution.user != null ? contribution.user : ""));
+        this.buffers[ContributionStore.TITLE].putInt(this.titles.idOf(contribution.title != null ? contribution.title : ""));
+
+        this.bufferedRows++;
+        if (this.bufferedRows == ROWS_PER_FLUSH) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered rows (dictionaries first).
+     * @throws IOException if the store could not be written.
+     */
+    public synchronized void flush() throws IOException {
+        this.users.flush();
+        this.titles.flush();
+        this.languages.flush();
+        this.types.flush();
+        for (int c = 0; c < this.channels.length; c++) {
+            ByteBuffer buffer = this.buffers[c];
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                this.channels[c].write(buffer);
+            }
+            buffer.clear();
+        }
+        this.rows = this.rows + this.bufferedRows;
+        this.bufferedRows = 0;
+    }
+
+    /**
+     * Gets the number of rows of the store (including the buffered ones).
+     */
+    public synchronized int size() {
+        return this.rows + this.bufferedRows;
+    }
+
+    /**
+     * Writes the buffered rows and closes the store.
+     * @throws IOException if the store could not be written.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            for (FileChannel channel : this.channels) {
+                channel.close();
+            }
+            this.users.close();
+            this.titles.close();
+            this.languages.close();
+            this.types.close();
+        }
+    }
+}
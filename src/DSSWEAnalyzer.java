@@ -1,47 +1,66 @@
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.conn.HttpHostConnectException;
-import org.apache.http.impl.client.DefaultHttpClient;
-
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author csarasua
  * Class to analyze the contributions of the Wikidata Editathon, by looking at the contributions of the participants.
+ * The analysis may cover several periods of time (see TimeWindow): the contributions of each participant are read
+ * only once, over the union of the windows, and every contribution is counted and reported in the windows it falls in.
  */
 public class DSSWEAnalyzer {
 
     /*
-     * File to report on the results of the analysis (reportFilePath is the path of the file
-     * containing the concrete contributions of participants;
-     * globalReportFilePath is the path of the file containing the global overview of the edited items and  the count of
-     * Wikidata and non-Wikidata edited items.
-     *
+     * Periods of time analyzed, each with its files to report on the results of the analysis (the file
+     * containing the concrete contributions of participants and the file containing the global overview of the edited
+     * items and the count of Wikidata and non-Wikidata edited items).
      */
-    private String reportFilePath;
-    private String globalReportFilePath;
+    private List<TimeWindow> windows = new ArrayList<TimeWindow>();
 
-    // When the event (period of time) started and ended.
+    // When the analyzed period of time (union of the windows) starts and ends.
     private String start;
     private String end;
     // List of user names of the participants of the event.
     private List<String> users = new ArrayList<String>();
 
-    // Number of edits related to Wikidata items (identified by identifiers of the shape Qxxx).
-    int wikidataEditsCount = 0;
-
-    // All registered edits (not necessarily related to Wikidata items). Properties may also be edited, and also help pages etc.
-    int allEditsCount = 0;
-
+    // Counts of the analyzed contributions (edits, types of edits, languages, edited items and edits by user) in each window.
+    ContributionAggregates[] windowAggregates;
+    // Counts of the first window (the only one of an analyzer created for one period of time).
+    ContributionAggregates aggregates;
 
 	// Number of edits on Wikidata Items DSS
     int dssEditsCount = 0;
@@ -50,54 +69,76 @@ public class DSSWEAnalyzer {
 	// Number of new Wikidata items created
     int newItems = 0;
 
-	// Types of edits --- defined by the Wikidata API: https://www.wikidata.org/w/api.php
-    int wbeditentityCreateEdits = 0;
-    int wbcreateclaimCreateEdits =0;
-    int wbsetclaimCreateEdits = 0;
-    int wbsetclaimUpdateEdits = 0;
-    int wbsetreferenceAddEdits = 0;
-    int wbsetreferenceSetEdits = 0;
-    int wbsetqualifierEdits = 0;
-    int wbsetlabelAddEdits = 0;
-    int wbsetlabelSetEdits = 0;
-    int wbsetdescriptionAddEdits=0;
-    int wbsetdescriptionSetEdits=0;
-    int wbsetdescriptionRemoveEdits=0;
-    int wbremovereferencesRemoveEdits =0;
-    int wbremoveclaimsRemoveEdits =0;
-    int wbsetaliasesAddEdits =0;
-    int wbsetaliasesSetEdits=0;
-    int wbsetsitelinkAddEdits=0;
-    int wbmergeitemsFromEdits=0;
-    int clientsitelinkUpdateEdits=0;
-
-    int euThings=0; //basque
-    int esThings=0; //spanish
-    int enThings=0; //english
-    int deThings=0; //german
-    int glThings=0; //galician
-    int otherThings=0; //other
-
-
     // Current code directory.
     String workingDir = System.getProperty("user.dir");
     String workingDirForFileName = workingDir.replace("\\", "/");
 
-    // Set of identifiers (title property in contributions) of all edited Wikidata items (Qxxx).
-    Set<String> setOfEditedItems = new HashSet<String>();
-    // Set of identifiers (title property in contributions) of all edited non-Wikidata items (properties, help pages etc. in Wikidata, but no Qxxx).
-    Set<String> setOfEditedNonWikidataItems = new HashSet<String>();
-
+    // Number of edited items, and of those connected to the DSS, in the last reported window.
     int numberOfEditedItems = 0;
-    int numberOfCreatedItems = 0;
 
     int numberOfEditedItemsConnectedDSS = 0;
 
+    // Number of participants analyzed at the same time (1: one after the other).
+    private int concurrentUsers = 1;
+
+    // Whether the reports are written by a separate writer thread.
+    private boolean asyncReports = false;
+
+    // Number of languages listed in the global report.
+    private int topLanguages = 20;
+
+    // Local copy of the responses of the API (null: always ask the API).
+    private ResponseCache responseCache = null;
+
+    // Whether the edited items are looked up to count the ones connected to the DSS.
+    private boolean lookUpEditedItems = false;
+
+    // Cache of the facts of the looked up items (null: all the items are asked to the API).
+    private ItemFactsCache itemFactsCache = null;
+
+    // Number of lookups of edited items sent at the same time.
+    private int concurrentLookups = 4;
+    // Maximum number of edited items waiting to be looked up while the contributions are read.
+    private static final int ENRICHMENT_QUEUE_CAPACITY = 20 * ItemLooker.BATCH_SIZE;
+    // Pipeline looking up the edited items during processByUsers (null: they are looked up with the global reports).
+    private ItemEnrichmentPipeline enrichment = null;
+
+    // Time a stream of recent changes can go without events before it is asked again (ms, see processLive).
+    private static final int LIVE_READ_TIMEOUT_MILLIS = 30000;
+
+    // First line of the reports of contributions.
+    private static final String REPORT_HEADER = "**** TRACKING THE EDITS DONE BY REGISTERED PARTICIPANTS ****";
+
+    // Maximum number of times the analysis of a participant is started again after an error.
+    private static final int MAX_USER_ATTEMPTS = 3;
 
-    // Map containing <key,value> pairs, where the key is the user name and the value is the count of edits of the user name used as key.
-    Map<String, Integer> mapEditsOfUsers = new HashMap<String, Integer>();
+    // Whether the progress is recorded in a journal, so that an interrupted run goes on where it stopped.
+    private boolean checkpointing = false;
 
+    // Directory of the store in which the read contributions are kept (null: they are not kept).
+    private File contributionStoreDir = null;
+    // Writer of the store during processByUsers (null: the contributions are not kept).
+    private ContributionStoreWriter storeWriter = null;
 
+    // Whether the bytes added and removed by the edits are measured from the store of contributions (see ContributionImpact).
+    private boolean byteDeltas = false;
+
+    // Number of registered participants whose contributions are asked in the same requests (see setUsersPerRequest).
+    private int usersPerRequest = 1;
+
+    // Part of the list of participants analyzed when the list is split among several processes (see setShard): the
+    // number of the shard (from 0) and the number of shards (1: the whole list).
+    private int shard = 0;
+    private int shards = 1;
+    // Version of the format of the files of partial counts of the shards.
+    private static final int PARTIAL_AGGREGATES_VERSION = 1;
+
+    // Whether processByUsers only reads the contributions made since the previous run (see setIncremental).
+    private boolean incremental = false;
+    // State of the previous runs during an incremental processByUsers (null: all the contributions are read).
+    private IncrementalState incrementalState = null;
+    // High-water marks of the participants completely read in this run, until their counts are added to the state.
+    private final Map<String, IncrementalState.HighWaterMark> readMarks = new ConcurrentHashMap<String, IncrementalState.HighWaterMark>();
 
 
     /**
@@ -108,13 +149,38 @@ public class DSSWEAnalyzer {
      * @param listOfUsers the set of user names that participated in the event
      */
     public DSSWEAnalyzer(String eventStart, String eventEnd, List<String> listOfUsers, String report, String globalReport) {
-        this.start = eventStart;
-        this.end = eventEnd;
+        this(Collections.singletonList(new TimeWindow("event", eventStart, eventEnd, report, globalReport)), listOfUsers);
+    }
+
+    /**
+     * Constructor method to create and initialize an analyzer of several periods of time.
+     *
+     * @param listOfWindows the periods of time to analyze, with their reports
+     * @param listOfUsers   the set of user names that participated in the event
+     */
+    public DSSWEAnalyzer(List<TimeWindow> listOfWindows, List<String> listOfUsers) {
+        if (listOfWindows.isEmpty()) {
+            throw new IllegalArgumentException("At least one window has to be analyzed");
+        }
+        this.windows.addAll(listOfWindows);
         this.users.addAll(listOfUsers);
 
-        this.reportFilePath = report;
-        this.globalReportFilePath = globalReport;
+        // The contributions are asked once for the union of the windows.
+        TimeWindow first = this.windows.get(0);
+        TimeWindow last = this.windows.get(0);
+        for (TimeWindow window : this.windows) {
+            if (window.getStartEpoch() < first.getStartEpoch()) {
+                first = window;
+            }
+            if (window.getEndEpoch() > last.getEndEpoch()) {
+                last = window;
+            }
+        }
+        this.start = first.getStart();
+        this.end = last.getEnd();
 
+        this.windowAggregates = newAggregates();
+        this.aggregates = this.windowAggregates[0];
     }
 
     /**
@@ -122,574 +188,1721 @@ public class DSSWEAnalyzer {
      */
     public void processByUsers() {
 
-        // Obtain the iterator of the list of user names.
-        Iterator<String> usersIT = this.users.iterator();
-
-        // Line separation used to write in the next line in the file.
-        String ls = System.getProperty("line.separator");
+        ReportSink[] reports = new ReportSink[this.windows.size()];
+        ReportSink[] globalReports = new ReportSink[this.windows.size()];
 
         try {
 
-            // Prepare the file where the contributions will be reported.
-            File reportFile = new File(workingDirForFileName + this.reportFilePath);
-            Files.write("**** TRACKING THE EDITS DONE BY REGISTERED PARTICIPANTS ****", reportFile, Charset.defaultCharset());
-            Files.append(ls, reportFile, Charset.defaultCharset());
-
-            // Prepares the file where the global overview of the contributions will be reported.
-            File globalReportFile = new File(workingDirForFileName + this.globalReportFilePath);
-            Files.write("**** GLOBAL RESULTS OF THE EDITATHON ****", globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-
-            // Goes through all the participants / users.
-            while (usersIT.hasNext()) {
-
-                // Gets the participant to analyze in the current iteration.
-                String user = usersIT.next();
-
-                //Control variable to check that the method went well. 1:error ; 0:OK.
-                int sstatus = 1;
-
-                // While there is a problem (e.g. Internet broke or the server gave an error) keep on asking for the ocntributions of the participant.
-                while (sstatus == 1) {
-                    sstatus = processOneUserContributions(user);
+            // An incremental run adds the new contributions to the reports of the previous runs, as they were when the
+            // state was saved (what a run reported without saving its state is reported again).
+            boolean delta = false;
+            if (this.incremental) {
+                this.incrementalState = new IncrementalState(new File(reportFile(0).getPath() + ".state"), windowsId(), this.windows.size());
+                delta = !this.incrementalState.isEmpty();
+                for (int w = 0; delta && w < this.windows.size(); w++) {
+                    long savedLength = this.incrementalState.getReportLength(w);
+                    if (savedLength >= 0 && reportFile(w).length() > savedLength) {
+                        RandomAccessFile truncate = new RandomAccessFile(reportFile(w), "rw");
+                        try {
+                            truncate.setLength(savedLength);
+                        } finally {
+                            truncate.close();
+                        }
+                    }
                 }
             }
 
-            // Writes the number of edits by user by going through the map<username,editsCountOfUser>, which has been populated in the 'processOneUserContributions' method.
-            Files.append("*number of edits by user*", globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-            Set<Map.Entry<String, Integer>> setOfMapEntries = mapEditsOfUsers.entrySet();
-            Iterator<Map.Entry<String, Integer>> itSetMapEntries = setOfMapEntries.iterator();
-            while (itSetMapEntries.hasNext()) {
-                Map.Entry<String, Integer> entry = itSetMapEntries.next();
-                Files.append("****" + entry.getKey() + "*" + entry.getValue() + "***", globalReportFile, Charset.defaultCharset());
-
-            }
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-
-            // Write all the Wikidata and non Wikidata Qitems edited.
-            Iterator setOfEditedItemsIterator = this.setOfEditedItems.iterator();
-            this.numberOfEditedItems = this.setOfEditedItems.size();
-
-            Files.append("------ list of edited items ------", globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-            while (setOfEditedItemsIterator.hasNext()) {
-                String itemI = setOfEditedItemsIterator.next().toString();
-                Files.append("edited item: " + itemI, globalReportFile, Charset.defaultCharset());
-                Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-              /*  ItemLooker itemLooker = new ItemLooker(itemI);
-                boolean itemIDSS = itemLooker.isItemConnectedToDSS();
-                if (itemIDSS) {
-                    this.numberOfEditedItemsConnectedDSS = this.numberOfEditedItemsConnectedDSS + 1;
+            for (int w = 0; w < this.windows.size(); w++) {
+                // Prepare the file where the contributions will be reported.
+                reports[w] = openReport(reportFile(w), delta);
+                if (!delta) {
+                    reports[w].writeLine(REPORT_HEADER);
                 }
-               */
 
+                // Prepares the file where the global overview of the contributions will be reported.
+                globalReports[w] = openReport(globalReportFile(w), false);
+                globalReports[w].writeLine("**** GLOBAL RESULTS OF THE EDITATHON ****");
             }
-            Iterator setOfEditedNonWikidataItemsIt = this.setOfEditedNonWikidataItems.iterator();
-            Files.append("------ list of NON WIKIDATA edited items ------", globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-            while (setOfEditedNonWikidataItemsIt.hasNext()) {
-                String itemI = setOfEditedNonWikidataItemsIt.next().toString();
-                Files.append("non Wikidata edited item: " + itemI, globalReportFile, Charset.defaultCharset());
-                Files.append(ls, globalReportFile, Charset.defaultCharset());
 
 
+            // The edited items are looked up while the contributions are read.
+            if (this.lookUpEditedItems) {
+                this.enrichment = startEnrichment();
             }
 
+            // Goes through all the participants / users.
+            processUsers(reports);
 
-            // Writes global counts.
-            Files.append("Number of total Wikidata edits: " + this.wikidataEditsCount, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-            Files.append("Number of total edits: " + this.allEditsCount, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-            Files.append("number of edited items: " + this.numberOfEditedItems, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-            Files.append("number of wbeditentity-create edits: " + this.wbeditentityCreateEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-            Files.append("number of wbsetclaim-create edits: " + this.wbsetclaimCreateEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-            Files.append("number of wbsetclaim-udpate edits: " + this.wbsetclaimUpdateEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-            Files.append("number of wbcreateclaim-create edits: " + this.wbcreateclaimCreateEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-            Files.append("number of wbsetreference-add edits: " + this.wbsetreferenceAddEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-
-            Files.append("number of wbsetreference-set edits: " + this.wbsetreferenceSetEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+            // The store is read again to measure the byte deltas of the contributions.
+            closeStore();
+            List<ContributionStore> stores = new ArrayList<ContributionStore>();
+            if (this.byteDeltas && this.contributionStoreDir != null) {
+                stores.add(new ContributionStore(storeDir(this.shard, this.shards)));
+            }
 
-            Files.append("number of wbsetqualifier edits: " + this.wbsetqualifierEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+            writeGlobalReports(globalReports, stores);
 
-            Files.append("number of wbsetlabel-add edits: " + this.wbsetlabelAddEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+            // The counts of a shard are merged with the ones of the other shards by processShards.
+            if (this.shards > 1) {
+                writePartialAggregates();
+            }
 
-            Files.append("number of wbsetlabel-set edits: " + this.wbsetlabelSetEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            // Writes to disk whatever was reported, also if the analysis failed.
+            for (int w = 0; w < this.windows.size(); w++) {
+                closeReport(reports[w]);
+                closeReport(globalReports[w]);
+            }
+            closeStore();
+            if (this.enrichment != null) {
+                // The analysis failed before the global reports.
+                this.enrichment.cancel();
+                this.enrichment = null;
+            }
+            // Keeps the marks of the participants whose new contributions are in the reports, for the next run.
+            if (this.incrementalState != null) {
+                for (int w = 0; w < this.windows.size(); w++) {
+                    this.incrementalState.setReportLength(w, reportFile(w).length());
+                }
+                try {
+                    this.incrementalState.save();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                this.incrementalState = null;
+                this.readMarks.clear();
+            }
+        }
 
-            Files.append("number of wbsetdescription-add edits: " + this.wbsetdescriptionAddEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+    }
 
-            Files.append("number of wbsetdescription-set edits: " + this.wbsetdescriptionSetEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+    /**
+     * Method to report on contributions kept in a store by a previous run (see setContributionStoreDir), without asking
+     * the Wikidata API for them: the counts of every window are computed from the store and the global reports are
+     * written as in processByUsers.
+     * @param store the store with the contributions of the participants.
+     */
+    public void processFromStore(ContributionStore store) {
 
-            Files.append("number of wbsetdescription-remove edits: " + this.wbsetdescriptionRemoveEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+        ReportSink[] globalReports = new ReportSink[this.windows.size()];
+        // The edits are counted by participant, as in processUsersContributions.
+        ParticipantMatcher participants = new ParticipantMatcher(this.users);
 
-            Files.append("number of wbremoveclaims-remove edits: " + this.wbremoveclaimsRemoveEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+        try {
+            for (int w = 0; w < this.windows.size(); w++) {
+                globalReports[w] = openReport(globalReportFile(w), false);
+                globalReports[w].writeLine("**** GLOBAL RESULTS OF THE EDITATHON ****");
+
+                this.windowAggregates[w] = store.aggregate(this.windows.get(w), participants);
+                // Participants without contributions are also in the map.
+                for (String user : this.users) {
+                    if (!this.windowAggregates[w].mapEditsOfUsers.containsKey(user)) {
+                        this.windowAggregates[w].mapEditsOfUsers.put(user, 0);
+                    }
+                }
+            }
+            this.aggregates = this.windowAggregates[0];
 
-            Files.append("number of wbremovereferences-remove edits: " + this.wbremovereferencesRemoveEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+            writeGlobalReports(globalReports, Collections.singletonList(store));
 
-            Files.append("number of wbsetaliases-add edits: " + this.wbsetaliasesAddEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (ReportSink globalReport : globalReports) {
+                closeReport(globalReport);
+            }
+        }
+    }
 
-            Files.append("number of wbsetaliases-set edits: " + this.wbsetaliasesSetEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+    /**
+     * Method to report on a list of participants split among several processes (see setShard), once all the shards have
+     * been analyzed with processByUsers: the partial counts of the shards are merged (in any order, the result is the
+     * same, see ContributionAggregates), the reports of contributions of the shards are joined (shard after shard), and
+     * the global reports are written as in processByUsers, with the byte deltas measured from the stores of the shards.
+     * Nothing is written if the partial counts of some shard are missing.
+     * @param shards the number of shards the list was split into.
+     */
+    public void processShards(int shards) {
 
-            Files.append("number of wbsitelink-add edits: " + this.wbsetsitelinkAddEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+        ReportSink[] reports = new ReportSink[this.windows.size()];
+        ReportSink[] globalReports = new ReportSink[this.windows.size()];
 
-            Files.append("number of wbmergeitems-from edits: " + this.wbmergeitemsFromEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+        try {
+            // Merges the counts of all the shards, before writing any report.
+            ContributionAggregates[] merged = newAggregates();
+            List<ContributionStore> stores = new ArrayList<ContributionStore>();
+            for (int s = 0; s < shards; s++) {
+                ContributionAggregates[] partials = readPartialAggregates(s, shards);
+                for (int w = 0; w < this.windows.size(); w++) {
+                    merged[w].merge(partials[w]);
+                }
+                if (this.byteDeltas && this.contributionStoreDir != null && storeDir(s, shards).isDirectory()) {
+                    stores.add(new ContributionStore(storeDir(s, shards)));
+                }
+            }
+            this.windowAggregates = merged;
+            this.aggregates = this.windowAggregates[0];
+
+            for (int w = 0; w < this.windows.size(); w++) {
+                // Participants without contributions are also in the map.
+                for (String user : this.users) {
+                    if (!this.windowAggregates[w].mapEditsOfUsers.containsKey(user)) {
+                        this.windowAggregates[w].mapEditsOfUsers.put(user, 0);
+                    }
+                }
 
-            Files.append("number of clientsitelink-update edits: " + this.clientsitelinkUpdateEdits, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+                reports[w] = openReport(reportFile(w), false);
+                reports[w].writeLine(REPORT_HEADER);
+                for (int s = 0; s < shards; s++) {
+                    copyShardReport(reportFile(w, s, shards), reports[w]);
+                }
 
-            Files.append("number EU edits: " + this.euThings, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-            Files.append("number ES edits: " + this.esThings, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-            Files.append("number EN edits: " + this.enThings, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-            Files.append("number DE edits: " + this.deThings, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-            Files.append("number GL edits: " + this.glThings, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
-            Files.append("number nolang/other edits: " + this.otherThings, globalReportFile, Charset.defaultCharset());
-            Files.append(ls, globalReportFile, Charset.defaultCharset());
+                globalReports[w] = openReport(globalReportFile(w), false);
+                globalReports[w].writeLine("**** GLOBAL RESULTS OF THE EDITATHON ****");
+            }
 
+            writeGlobalReports(globalReports, stores);
 
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            for (int w = 0; w < this.windows.size(); w++) {
+                closeReport(reports[w]);
+                closeReport(globalReports[w]);
+            }
         }
-
     }
 
-
     /**
-     * Method to get all the contributions of a particular user or participant.
-     * @param userName
-     * @return 1 if something went wrong 0 if everything went OK.
-     * Note that feedcontributions (Wikidata API) only gives up to 50 contributions. Use query listofcontributions (able to retrieve up to 500 contributions at once).
+     * Copies the contributions reported by a shard (without its first line) into a report.
      */
-    public int processOneUserContributions(String userName) {
-
-        // Control variable to return (by default everything OK).
-        int result = 0;
+    private void copyShardReport(File shardReport, ReportSink report) throws IOException {
+        BufferedReader shardReader = new BufferedReader(new InputStreamReader(new FileInputStream(shardReport), Charset.defaultCharset()));
+        try {
+            String line = shardReader.readLine();
+            if (line != null && !line.equals(REPORT_HEADER)) {
+                report.writeLine(line);
+            }
+            while ((line = shardReader.readLine()) != null) {
+                report.writeLine(line);
+            }
+        } finally {
+            shardReader.close();
+        }
+    }
 
-        // Count of the number of edits made by the current user being analyzed.
-        int editsOfCurrentUser = 0;
+    /**
+     * Writes the counts of every window of the shard of the analyzer (see setShard) in its file of partial counts, in
+     * the form of ContributionAggregates.writeTo. The file is written next to its place and then renamed.
+     */
+    private void writePartialAggregates() throws IOException {
+        File file = partialAggregatesFile(this.shard, this.shards);
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(PARTIAL_AGGREGATES_VERSION);
+            out.writeUTF(windowsId());
+            out.writeInt(this.shard);
+            out.writeInt(this.shards);
+            for (ContributionAggregates windowAggregate : this.windowAggregates) {
+                windowAggregate.writeTo(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            // Some systems do not rename over an existing file.
+            file.delete();
+            if (!temporary.renameTo(file)) {
+                throw new IOException("The partial counts could not be written in " + file);
+            }
+        }
+    }
 
-        // Create the HTTP client.
-        HttpClient client = new DefaultHttpClient();
-        HttpGet getContributionsOfUser;
+    /**
+     * Reads the counts of every window written by one of several shards (see writePartialAggregates).
+     * @throws IOException if the file is missing or was written by another split or for other windows.
+     */
+    private ContributionAggregates[] readPartialAggregates(int shard, int shards) throws IOException {
+        File file = partialAggregatesFile(shard, shards);
+        if (!file.isFile()) {
+            throw new IOException("The shard " + (shard + 1) + " of " + shards + " has not been analyzed: " + file + " is missing");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != PARTIAL_AGGREGATES_VERSION || !in.readUTF().equals(windowsId()) || in.readInt() != shard || in.readInt() != shards) {
+                throw new IOException("The partial counts in " + file + " are not of the shard " + (shard + 1) + " of " + shards + " of these windows");
+            }
+            ContributionAggregates[] partials = new ContributionAggregates[this.windows.size()];
+            for (int w = 0; w < partials.length; w++) {
+                partials[w] = ContributionAggregates.readFrom(in);
+            }
+            return partials;
+        } finally {
+            in.close();
+        }
+    }
 
-        /* The user name which is read from the input file containing all the user names of the participants of the event
-         * can be either a complete user name or a string of type "IP@IP prefix" (in case the user edited anonymously without logging in).
-         * We track IPs with a prefix belonging to the UPV/EHU university, Lejona.
-         * By exploration we found out that this was: 158.227.136.
-         */
-        if (userName.contains("IP@")) {
-            // Gets the IP prefix.
-            String[] split = userName.split("@");
-            String IPprefix = split[1];
-            // Create the HTTP GET request using the "ucuserprefix" parameter of the Wikidata API.
-            getContributionsOfUser = new HttpGet("https://www.wikidata.org/w/api.php?action=query&list=usercontribs&format=json&ucstart=" + this.end + "&ucend=" + this.start + "&ucuserprefix=" + IPprefix + "&uclimit=500");
+    /**
+     * Method to follow the contributions of the participants while the event takes place, from a stream of recent
+     * changes (server-sent events, e.g. https://stream.wikimedia.org/v2/stream/recentchange, or an SseReplayServer).
+     * Every edit of Wikidata made by a participant (see ParticipantMatcher) is counted and reported in the windows it
+     * falls in, as soon as it arrives. The global reports are written again every snapshotIntervalMillis by a thread of
+     * their own (without looking up the edited items), also while no event arrives, and, with the looked up items, when
+     * the stream is over: when the time of the stream (see StreamClock) passes the end of the last window, or when the
+     * stream ends and reconnect is false. If the connection breaks and reconnect is true, the stream is asked again from
+     * the last received event (Last-Event-ID), waiting more after every failure. A stream without events for
+     * LIVE_READ_TIMEOUT_MILLIS is asked again at once.
+     * @param streamUrl URL of the stream.
+     * @param snapshotIntervalMillis time between two snapshots of the global reports (ms, greater than 0).
+     * @param reconnect true to connect again when the stream ends before the end of the last window.
+     */
+    public void processLive(String streamUrl, long snapshotIntervalMillis, boolean reconnect) {
 
-        } else {
-            // Complete user name -- the participant was logged in while editing.
-            // Create the HTTP GET request using the "ucuser" parameter of the Wikidata API.
-            getContributionsOfUser = new HttpGet("https://www.wikidata.org/w/api.php?action=query&list=usercontribs&format=json&ucstart=" + this.end + "&ucend=" + this.start + "&ucuser=" + userName + "&uclimit=500");
+        ParticipantMatcher participants = new ParticipantMatcher(this.users);
+        final long endEpoch = Timestamps.parse(this.end);
 
+        // Participants without contributions are also in the map.
+        for (ContributionAggregates windowAggregate : this.windowAggregates) {
+            for (String user : this.users) {
+                windowAggregate.mapEditsOfUsers.put(user, 0);
+            }
         }
 
+        final ReportSink[] reports = new ReportSink[this.windows.size()];
+        // Lock of the counts and the reports, shared by the reader of the stream and the writer of the snapshots.
+        final Object liveLock = new Object();
+        final StreamClock clock = new StreamClock();
+        // Whether the stream is over, and the response of the stream being read (aborted when the stream is over).
+        final AtomicBoolean over = new AtomicBoolean(false);
+        final AtomicReference<HttpResponse> currentStream = new AtomicReference<HttpResponse>();
+        ScheduledExecutorService snapshots = null;
+        try {
+            for (int w = 0; w < this.windows.size(); w++) {
+                reports[w] = openReport(reportFile(w), false);
+                reports[w].writeLine("**** TRACKING THE EDITS DONE BY REGISTERED PARTICIPANTS (LIVE) ****");
+            }
 
+            // Writes the snapshots, and ends the stream when its time passes the end of the last window.
+            snapshots = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "live-snapshots");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            snapshots.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    try {
+                        synchronized (liveLock) {
+                            writeSnapshot(reports);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    if (clock.nowEpochSeconds() > endEpoch) {
+                        over.set(true);
+                        RequestScheduler.getShared().getTransport().abort(currentStream.get());
+                    }
+                }
+            }, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
 
-        // Prepares file in which to report all the edits by the user.
-        File reportFile = new File(workingDirForFileName + this.reportFilePath);
-        String ls = System.getProperty("line.separator");
-
-        try {
-            Files.append("********READING CONTRIBUTIONS of *****" + userName + "***", reportFile, Charset.defaultCharset());
-            Files.append(ls, reportFile, Charset.defaultCharset());
-        } catch (IOException e) {
-            e.printStackTrace();
-            // If there was an exception, return 1 to show that there was a problem.
-            result = 1;
-        }
+            Autosummary autosummary = new Autosummary();
+            String lastEventId = null;
+            int failures = 0;
 
-        //Set the header of the HTTP GET request and ask for a JSON response.
-        getContributionsOfUser.setHeader("Accept", "application/json");
+            while (!over.get() && !Thread.currentThread().isInterrupted()) {
 
-        HttpResponse response = null;
-        try {
-            int status = 1;
-            // While there is something wrong (e.g. Internet broke or the server was offline) retry.
-            while (status == 1) {
-                //Execute the HTTP GET request and obtain the response.
-                response = client.execute(getContributionsOfUser);
-                // Gets the status line.
-                int statusCode = response.getStatusLine().getStatusCode();
-                // If everything went OK (status == 200)
-                if (statusCode == 200) {
-
-                    // Gets the entity in the response (body).
-                    HttpEntity responseEntity = response.getEntity();
-                    if (responseEntity != null) {
-                        ObjectMapper mapper = new ObjectMapper();
-                        InputStream in = null;
-                        try {
-                            in = responseEntity.getContent();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            result = 1;
+                HttpGet getStream = new HttpGet(streamUrl);
+                getStream.setHeader("Accept", "text/event-stream");
+                // Without compression, every event is read when it arrives and the connection can be aborted.
+                getStream.setHeader("Accept-Encoding", "identity");
+                if (lastEventId != null) {
+                    getStream.setHeader("Last-Event-ID", lastEventId);
+                }
+                HttpConnectionParams.setSoTimeout(getStream.getParams(), LIVE_READ_TIMEOUT_MILLIS);
+                // Whether the stream was asked again because no event arrived.
+                boolean quiet = false;
+
+                HttpResponse response = null;
+                try {
+                    response = RequestScheduler.getShared().getTransport().execute(getStream);
+                    currentStream.set(response);
+                    if (response.getStatusLine().getStatusCode() != 200 || response.getEntity() == null) {
+                        throw new IOException("The stream answered with HTTP status " + response.getStatusLine().getStatusCode() + " to " + streamUrl);
+                    }
+                    failures = 0;
+
+                    SseEventReader events = new SseEventReader(response.getEntity().getContent());
+                    SseEventReader.Event event;
+                    while (!over.get() && (event = events.next()) != null) {
+                        if (event.getId() != null) {
+                            lastEventId = event.getId();
                         }
-                        Map<String, Object> contributionsCall = null;
+                        Contribution contribution;
                         try {
-                            contributionsCall = mapper.readValue(in,
-                                    new TypeReference<Map<String, Object>>() {
-                                    });
+                            contribution = RecentChangeReader.read(event.getData(), RecentChangeReader.WIKIDATA);
                         } catch (IOException e) {
-                            e.printStackTrace();
-                            result = 1;
+                            // An event that is not valid is skipped.
+                            continue;
                         }
+                        if (contribution != null) {
+                            clock.eventReceived(contribution.epochSeconds);
+                            if (contribution.epochSeconds > endEpoch) {
+                                over.set(true);
+                            } else {
+                                String participant = participants.match(contribution.user);
+                                if (participant != null) {
+                                    synchronized (liveLock) {
+                                        countLiveContribution(participant, contribution, reports, autosummary);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                } catch (SocketTimeoutException e) {
+                    // No event for LIVE_READ_TIMEOUT_MILLIS: not a failure of the stream.
+                    quiet = true;
+                } catch (IOException e) {
+                    // The request of the stream is aborted when the stream is over.
+                    if (!over.get()) {
+                        e.printStackTrace();
+                        failures++;
+                    }
+                } finally {
+                    currentStream.set(null);
+                    // The stream does not end by itself: the connection is closed instead of being read to the end.
+                    RequestScheduler.getShared().getTransport().abort(response);
+                }
 
+                if (clock.nowEpochSeconds() > endEpoch) {
+                    over.set(true);
+                } else if (!over.get() && !quiet) {
+                    if (!reconnect) {
+                        over.set(true);
+                    } else if (!waitBeforeAttempt("the stream of recent changes", failures)) {
+                        break;
+                    }
+                }
+            }
 
-                        List<Object> listOfUserContributions;
-                        Map<String, Object> contribs;
-                        Map<String, Object> contributionI;
-                        Integer userId;
-                        String user = new String(); //username
-                        Integer pageId;
-                        Integer revId;
-                        Integer parentId;
-                        Integer ns;
-                        String titleItemId = new String();
-                        String timestamp = new String();
-                        String comment = new String();
-                        Integer size;
-
-
-
-                        /**
-                         * Shape of API response:
-                         * {
-                         "batchcomplete": "",
-                         "query": {
-                         "usercontribs": [
-                         {
-                         "userid": 2088802,
-                         "user": "xxx",
-                         "pageid": 22387768,
-                         "revid": 225922733,
-                         "parentid": 225922207,
-                         "ns": 0,
-                         "title": "Q20640474",
-                         "timestamp": "2015-07-03T15:57:04Z",
-                         "top": "",
-                         "comment": "[[Property:P276]]: [[Q10313]]",
-                        "size": 2369
-                    }, ....
-                         */
-
-                        //most outer level
-                        for (Map.Entry<String, Object> attribute : contributionsCall
-                                .entrySet()) {
-                            if (attribute.getKey().equals("query") && attribute.getValue() instanceof Map) {
+            // The snapshots stop (the one being written ends) before the final reports are written.
+            stopSnapshots(snapshots);
+            snapshots = null;
 
-                                contribs = (Map<String, Object>) attribute.getValue();
+            // Final reports, with the looked up items.
+            ReportSink[] globalReports = new ReportSink[this.windows.size()];
+            try {
+                for (int w = 0; w < this.windows.size(); w++) {
+                    globalReports[w] = openReport(globalReportFile(w), false);
+                    globalReports[w].writeLine("**** GLOBAL RESULTS OF THE EDITATHON ****");
+                }
+                writeGlobalReports(globalReports, Collections.<ContributionStore>emptyList());
+            } finally {
+                for (ReportSink globalReport : globalReports) {
+                    closeReport(globalReport);
+                }
+            }
 
-                                for (Map.Entry<String, Object> entryC : contribs.entrySet()) {
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (snapshots != null) {
+                stopSnapshots(snapshots);
+            }
+            for (ReportSink report : reports) {
+                closeReport(report);
+            }
+        }
+    }
 
-                                    // Reads the contributions
-                                    if (entryC.getKey().equals("usercontribs") && entryC.getValue() instanceof List) {
+    /**
+     * Stops the writer of the snapshots of processLive, waiting for the snapshot being written (if any).
+     */
+    private void stopSnapshots(ScheduledExecutorService snapshots) {
+        snapshots.shutdown();
+        try {
+            while (!snapshots.awaitTermination(LIVE_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // Waits for the snapshot.
+            }
+        } catch (InterruptedException e) {
+            snapshots.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                                        listOfUserContributions = (ArrayList<Object>) entryC.getValue();
+    /**
+     * Time of a stream of recent changes: the time of the last event received plus the time elapsed since it arrived
+     * (before the first event, -1). It goes on while no event arrives, so the end of the windows is noticed without
+     * events, also for a replayed stream, whose events are older than the clock.
+     */
+    private static final class StreamClock {
+        private long lastEventEpochSeconds = -1;
+        private long lastEventArrivalMillis;
 
+        synchronized void eventReceived(long epochSeconds) {
+            this.lastEventEpochSeconds = epochSeconds;
+            this.lastEventArrivalMillis = System.currentTimeMillis();
+        }
 
-                                        for (int i = 0; i < listOfUserContributions.size(); i++) {
+        synchronized long nowEpochSeconds() {
+            if (this.lastEventEpochSeconds < 0) {
+                return -1;
+            }
+            return this.lastEventEpochSeconds + (System.currentTimeMillis() - this.lastEventArrivalMillis) / 1000;
+        }
+    }
 
-                                            // Processes each contribution of this user
-                                            contributionI = (Map<String, Object>) listOfUserContributions.get(i);
+    /**
+     * Counts and reports one contribution of the stream of recent changes in the windows it falls in.
+     * @param participant the entry of the participant (see ParticipantMatcher).
+     * @param contribution the contribution.
+     * @param reports the reports of contributions (one per window).
+     * @param autosummary object in which the contribution is classified.
+     */
+    private void countLiveContribution(String participant, Contribution contribution, ReportSink[] reports, Autosummary autosummary) throws IOException {
+        EditTypeClassifier.parse(contribution.comment, autosummary);
+        RunMetrics.getShared().addContributions(1);
+        for (int w = 0; w < this.windows.size(); w++) {
+            if (this.windows.get(w).contains(contribution.epochSeconds)) {
+                reportContribution(reports[w], contribution);
+                countContribution(this.windowAggregates[w], contribution, autosummary);
+                Integer edits = this.windowAggregates[w].mapEditsOfUsers.get(participant);
+                this.windowAggregates[w].mapEditsOfUsers.put(participant, edits == null ? 1 : edits + 1);
+            }
+        }
+    }
 
-                                            // Write the processed contribution in the file.
-                                            Files.append("--- new contribution ---", reportFile, Charset.defaultCharset());
-                                            Files.append(ls, reportFile, Charset.defaultCharset());
+    /**
+     * Writes the global reports with the current counts, without looking up the edited items. Every report is written
+     * next to its file and then renamed, so the readers always find a complete report.
+     * @param reports the reports of contributions (one per window), written to disk too.
+     */
+    private void writeSnapshot(ReportSink[] reports) throws IOException {
+        for (int w = 0; w < this.windows.size(); w++) {
+            reports[w].flush();
+
+            File globalReportFile = globalReportFile(w);
+            File snapshotFile = new File(globalReportFile.getPath() + ".tmp");
+            ReportSink snapshot = new FileReportSink(snapshotFile, false);
+            try {
+                snapshot.writeLine("**** GLOBAL RESULTS OF THE EDITATHON (SNAPSHOT) ****");
+                writeGlobalReport(snapshot, this.windowAggregates[w], null, null, null);
+            } finally {
+                snapshot.close();
+            }
+            if (!snapshotFile.renameTo(globalReportFile)) {
+                // Some systems do not rename over an existing file.
+                globalReportFile.delete();
+                snapshotFile.renameTo(globalReportFile);
+            }
+        }
+    }
 
-                                            for (Map.Entry<String, Object> entry : contributionI.entrySet()) {
+    /**
+     * Writes the global overview of every window, looking up first the edited items (if lookUpEditedItems is set) and
+     * measuring the byte deltas of the contributions (if byteDeltas is set).
+     * @param globalReports the global reports (one per window).
+     * @param stores the stores with the contributions of the windows (none: the byte deltas are not measured).
+     */
+    private void writeGlobalReports(ReportSink[] globalReports, List<ContributionStore> stores) throws IOException {
+
+        long started = RunMetrics.getShared().start();
+
+        // Counts the edited items connected to the DSS: the items of all the windows not given yet to the pipeline of
+        // lookups (all of them, if the pipeline was not started while reading the contributions) are given now.
+        // Items whose lookup failed are counted apart, so the other ones are still counted.
+        ItemIdSet connectedItems = null;
+        ItemIdSet failedItems = null;
+        if (this.lookUpEditedItems) {
+            ItemEnrichmentPipeline lookups = this.enrichment != null ? this.enrichment : startEnrichment();
+            this.enrichment = null;
+            try {
+                for (ContributionAggregates windowAggregate : this.windowAggregates) {
+                    lookups.offerAll(windowAggregate.setOfEditedItems);
+                }
+                connectedItems = lookups.finish();
+                failedItems = lookups.getFailedItems();
+                if (lookups.getFailure() != null) {
+                    lookups.getFailure().printStackTrace();
+                }
+            } catch (IOException e) {
+                // The rest of the global reports are written anyway.
+                e.printStackTrace();
+                lookups.cancel();
+            }
+        }
 
+        ContributionImpact[] impacts = null;
+        if (this.byteDeltas && !stores.isEmpty()) {
+            try {
+                for (ContributionStore store : stores) {
+                    ContributionImpact[] storeImpacts = ContributionImpact.measure(store, this.windows, this.concurrentLookups, this.responseCache);
+                    if (impacts == null) {
+                        impacts = storeImpacts;
+                    } else {
+                        for (int w = 0; w < impacts.length; w++) {
+                            impacts[w].merge(storeImpacts[w]);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                impacts = null;
+                // The rest of the global reports are written anyway.
+                e.printStackTrace();
+            }
+        }
 
-                                                //Read one complete contribution: get the user id, user name, pageid, revid, parentid, ns, title of item, timestamp, comment, size of contribution.
-                                                if (entry.getKey().equals("userid") && entry.getValue() instanceof Integer) {
-                                                    userId = (Integer) entry.getValue();
+        for (int w = 0; w < this.windows.size(); w++) {
+            writeGlobalReport(globalReports[w], this.windowAggregates[w], connectedItems, failedItems, impacts == null ? null : impacts[w]);
+        }
+        RunMetrics.getShared().stop(RunMetrics.GLOBAL_REPORTS, started);
+    }
 
-                                                    Files.append("userid: " + userId, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
+    /**
+     * Starts a pipeline to look up edited items (see ItemEnrichmentPipeline), with the cache of facts of the analyzer.
+     */
+    private ItemEnrichmentPipeline startEnrichment() {
+        ItemEnrichmentPipeline pipeline = new ItemEnrichmentPipeline(ItemLooker.DSS_ITEM, this.concurrentLookups, this.itemFactsCache, ENRICHMENT_QUEUE_CAPACITY);
+        pipeline.start();
+        return pipeline;
+    }
 
-                                                } else if (entry.getKey().equals("user") && entry.getValue() instanceof String) {
-                                                    user = (String) entry.getValue();
+    /**
+     * Opens the store of contributions, if there is one (see setContributionStoreDir).
+     * @param append true to keep the contributions of the store (the run goes on with an interrupted one).
+     */
+    private void openStore(boolean append) throws IOException {
+        if (this.contributionStoreDir != null) {
+            this.storeWriter = new ContributionStoreWriter(storeDir(this.shard, this.shards), append);
+        }
+    }
 
-                                                    Files.append("user name (user): " + user, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
+    /**
+     * Closes the store of contributions (if it was opened), printing the error if it could not be written.
+     */
+    private void closeStore() {
+        if (this.storeWriter != null) {
+            try {
+                this.storeWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                this.storeWriter = null;
+            }
+        }
+    }
 
-                                                } else if (entry.getKey().equals("pageid") && entry.getValue() instanceof Integer) {
-                                                    pageId = (Integer) entry.getValue();
+    /**
+     * Writes the global overview of the contributions of one window.
+     * @param globalReport the global report of the window.
+     * @param aggregates the counts of the window.
+     * @param connectedItems the edited items connected to the DSS (null if they were not looked up).
+     * @param failedItems the edited items that could not be looked up (null if they were not looked up).
+     * @param impact the byte deltas of the contributions of the window (null if they were not measured).
+     */
+    private void writeGlobalReport(ReportSink globalReport, ContributionAggregates aggregates, ItemIdSet connectedItems, ItemIdSet failedItems, ContributionImpact impact) throws IOException {
 
-                                                    Files.append("page id: " + pageId, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
+        // Writes the number of edits by user by going through the map<username,editsCountOfUser>, which has been populated in the 'processOneUserContributions' method.
+        globalReport.writeLine("*number of edits by user*");
 
+        Set<Map.Entry<String, Integer>> setOfMapEntries = aggregates.mapEditsOfUsers.entrySet();
+        Iterator<Map.Entry<String, Integer>> itSetMapEntries = setOfMapEntries.iterator();
+        while (itSetMapEntries.hasNext()) {
+            Map.Entry<String, Integer> entry = itSetMapEntries.next();
+            globalReport.write("****" + entry.getKey() + "*" + entry.getValue() + "***");
 
-                                                } else if (entry.getKey().equals("revid") && entry.getValue() instanceof Integer) {
-                                                    revId = (Integer) entry.getValue();
-
-                                                    Files.append("rev id: " + revId, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
-
-                                                } else if (entry.getKey().equals("parentid") && entry.getValue() instanceof Integer) {
-                                                    parentId = (Integer) entry.getValue();
-
-                                                    Files.append("parent id: " + parentId, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
-
-
-                                                } else if (entry.getKey().equals("ns") && entry.getValue() instanceof Integer) {
-                                                    ns = (Integer) entry.getValue();
-
-                                                    Files.append("ns: " + ns, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
-
-                                                } else if (entry.getKey().equals("title") && entry.getValue() instanceof String) {
-                                                    titleItemId = (String) entry.getValue();
-
-                                                    Files.append("title (Item Id): " + titleItemId, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
-
-                                                } else if (entry.getKey().equals("timestamp") && ((entry.getValue() instanceof String) || (entry.getValue() instanceof Date))) {
-                                                    timestamp = (String) entry.getValue();
-
-                                                    Files.append("timestamp: " + timestamp, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
-
-                                                } else if (entry.getKey().equals("comment") && entry.getValue() instanceof String) {
-                                                    comment = (String) entry.getValue();
-
-                                                    Files.append("comment: " + comment, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
-
-                                                } else if (entry.getKey().equals("size") && ((entry.getValue() instanceof String)) || (entry.getValue() instanceof Integer)) {
-                                                    size = (Integer) entry.getValue();
-
-                                                    Files.append("size: " + size, reportFile, Charset.defaultCharset());
-                                                    Files.append(ls, reportFile, Charset.defaultCharset());
-
-                                                }
-
-                                            }
-
-
-                                            // Checks it the contribution is on a Wikidata (Qxxx) item and count accordingly.
-
-                                            if (titleItemId.startsWith("Q")) {
-                                                this.setOfEditedItems.add(titleItemId);
-                                                this.wikidataEditsCount = this.wikidataEditsCount + 1;
-
-
-
-                                                if(comment.contains("wbeditentity-create"))
-                                                {
-                                                    this.wbeditentityCreateEdits = this.wbeditentityCreateEdits+1;
-                                                }
-                                                else if (comment.contains("wbsetclaim-create"))
-                                                {
-                                                    this.wbsetclaimCreateEdits = this.wbsetclaimCreateEdits+1;
-                                                }
-                                                else if (comment.contains("wbsetclaim-update"))
-                                                {
-                                                    this.wbsetclaimUpdateEdits = this.wbsetclaimUpdateEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetreference-add"))
-                                                {
-                                                    this.wbsetreferenceAddEdits = this.wbsetreferenceAddEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetreference-set"))
-                                                {
-                                                    this.wbsetreferenceSetEdits = this.wbsetreferenceSetEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetqualifier"))
-                                                {
-                                                    this.wbsetqualifierEdits = this.wbsetqualifierEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetlabel-add"))
-                                                {
-                                                    this.wbsetlabelAddEdits = this.wbsetlabelAddEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetlabel-set"))
-                                                {
-                                                    this.wbsetlabelSetEdits = this.wbsetlabelSetEdits+1;
-                                                }
-                                                else if(comment.contains("wbremoveclaims-remove"))
-                                                {
-                                                    this.wbremoveclaimsRemoveEdits = this.wbremoveclaimsRemoveEdits+1;
-                                                }
-                                                else if(comment.contains("wbremovereferences-remove"))
-                                                {
-                                                    this.wbremovereferencesRemoveEdits = this.wbremovereferencesRemoveEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetdescription-add"))
-                                                {
-                                                    this.wbsetdescriptionAddEdits = this.wbsetdescriptionAddEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetdescription-set"))
-                                                {
-                                                    this.wbsetdescriptionSetEdits = this.wbsetdescriptionSetEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetaliases-add"))
-                                                {
-                                                    this.wbsetaliasesAddEdits = this.wbsetaliasesAddEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetaliases-set"))
-                                                {
-                                                    this.wbsetaliasesSetEdits = this.wbsetaliasesSetEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetsitelink-add"))
-                                                {
-                                                    this.wbsetsitelinkAddEdits = this.wbsetsitelinkAddEdits+1;
-                                                }
-                                                else if(comment.contains("wbmergeitems-from"))
-                                                {
-                                                    this.wbmergeitemsFromEdits = this.wbmergeitemsFromEdits+1;
-                                                }
-                                                else if(comment.contains("wbcreateclaim-create"))
-                                                {
-                                                    this.wbcreateclaimCreateEdits = this.wbcreateclaimCreateEdits+1;
-                                                }
-                                                else if(comment.contains("wbsetdescription-remove"))
-                                                {
-                                                    this.wbsetdescriptionRemoveEdits = this.wbsetdescriptionRemoveEdits+1;
-                                                }
-                                                else if(comment.contains("clientsitelink-update"))
-                                                {
-                                                    this.clientsitelinkUpdateEdits = this.clientsitelinkUpdateEdits+1;
-                                                }
-
-                                                if(comment.contains("|en"))
-                                                { this.enThings = this.enThings+1;}
-                                                else if(comment.contains("|eu"))
-                                                { this.euThings = this.euThings+1;}
-                                                else if(comment.contains("|es"))
-                                                { this.esThings = this.esThings+1;}
-                                                else if(comment.contains("|de"))
-                                                { this.deThings = this.deThings+1;}
-                                                else if(comment.contains("|gl"))
-                                                { this.glThings = this.glThings+1;}
-                                                else //others or no lang
-                                                { this.otherThings = this.otherThings+1;}
-
-
-                                            } else {
-                                                setOfEditedNonWikidataItems.add(titleItemId);
-                                            }
-                                            // Count all edits.
-                                            this.allEditsCount = this.allEditsCount + 1;
-                                            if (comment.contains("wbeditentity")) {
-                                                this.numberOfCreatedItems = this.numberOfEditedItems + 1;
-                                            }
-
-
-
-
-                                            editsOfCurrentUser = editsOfCurrentUser + 1;
-
-
-
-                                        }
+        }
+        globalReport.newLine();
 
 
-                                    }
+        // Write all the Wikidata (in the order of their numbers) and non Wikidata Qitems edited.
+        List<String> editedItems = aggregates.setOfEditedItems.toItemIds();
+        this.numberOfEditedItems = editedItems.size();
 
-                                }
-                            }
-                        }
+        globalReport.writeLine("------ list of edited items ------");
+        for (String itemI : editedItems) {
+            globalReport.writeLine("edited item: " + itemI);
 
+        }
+        globalReport.writeLine("------ list of NON WIKIDATA edited items ------");
+        for (String itemI : aggregates.setOfEditedNonWikidataItems) {
+            globalReport.writeLine("non Wikidata edited item: " + itemI);
 
+        }
 
- }
-                    // Everything was read property -- show it went OK in return.
-                    status = 0;
 
-                    //Creates the <key,Value> entry in the map with the user name and his/her number of edits.
-                    this.mapEditsOfUsers.put(userName, editsOfCurrentUser);
+        // Writes global counts.
+        globalReport.writeLine("Number of total Wikidata edits: " + aggregates.wikidataEditsCount);
+        globalReport.writeLine("Number of total edits: " + aggregates.allEditsCount);
 
+        globalReport.writeLine("number of edited items: " + this.numberOfEditedItems);
 
+        // Counts the edited items connected to the DSS (among the ones that could be looked up).
+        if (connectedItems != null) {
+            this.numberOfEditedItemsConnectedDSS = 0;
+            int notLookedUp = 0;
+            for (int item : aggregates.setOfEditedItems.toSortedArray()) {
+                if (connectedItems.contains(item)) {
+                    this.numberOfEditedItemsConnectedDSS = this.numberOfEditedItemsConnectedDSS + 1;
+                } else if (failedItems != null && failedItems.contains(item)) {
+                    notLookedUp++;
                 }
             }
-
-
-        } catch (HttpHostConnectException connE) {
-            connE.printStackTrace();
-            // Shows something that went wrong.
-            result = 1;
-        } catch (IOException e) {
-            e.printStackTrace();
-            // Shows something that went wrong.
-            result = 1;
-        }
-        // Always return result (1 / 0).
-        finally {
-            return result;
+            globalReport.writeLine("number of edited items connected to DSS: " + this.numberOfEditedItemsConnectedDSS);
+            if (notLookedUp > 0) {
+                globalReport.writeLine(notLookedUp + " items could not be looked up");
+            }
         }
 
+        // Writes the number of edits of each type.
+        for (EditType type : EditType.values()) {
+            globalReport.writeLine("number of " + type.getReportLabel() + " edits: " + aggregates.getEditTypeCount(type));
+        }
 
+        // Writes the languages with most edits.
+        globalReport.writeLine("------ top " + this.topLanguages + " languages (of " + aggregates.languageCounts.size() + ") ------");
+        for (Integer languageId : aggregates.languageCounts.top(this.topLanguages)) {
+            globalReport.writeLine("number " + LanguageCodes.code(languageId) + " edits: " + aggregates.languageCounts.get(languageId));
+        }
+        globalReport.writeLine("number nolang edits: " + aggregates.noLanguageEdits);
 
+        if (impact != null) {
+            writeImpact(globalReport, impact);
+        }
     }
 
+    /**
+     * Writes the bytes added and removed by the contributions of one window: totals, edits by range of deltas, and
+     * totals and edits by range of every user and of every edited page.
+     */
+    private void writeImpact(ReportSink globalReport, ContributionImpact impact) throws IOException {
+
+        ContributionImpact.Totals totals = impact.getTotals();
+        globalReport.writeLine("------ byte deltas of the edits ------");
+        globalReport.writeLine("number of edits with byte delta: " + totals.getEdits());
+        globalReport.writeLine("number of edits without byte delta (size before the edit unknown): " + impact.getUnresolvedEdits());
+        globalReport.writeLine("bytes added: " + totals.getBytesAdded());
+        globalReport.writeLine("bytes removed: " + totals.getBytesRemoved());
+        globalReport.writeLine("net bytes: " + totals.getNetBytes());
+        for (int range = 0; range < ContributionImpact.RANGES; range++) {
+            globalReport.writeLine("number of edits of " + ContributionImpact.rangeLabel(range) + " bytes: " + totals.getRangeCount(range));
+        }
 
+        // User, edits, bytes added, removed and net, and edits of every range of deltas.
+        globalReport.writeLine("------ byte deltas by user (edits*added*removed*net*edits by range) ------");
+        for (Map.Entry<String, ContributionImpact.Totals> user : impact.getUsers().entrySet()) {
+            writeImpactTotals(globalReport, user.getKey(), user.getValue());
+        }
 
-    // Getter and setters of class variables.
+        // Page, edits, bytes added, removed and net, and edits of every range of deltas.
+        globalReport.writeLine("------ byte deltas by edited item (edits*added*removed*net*edits by range) ------");
+        for (Map.Entry<String, ContributionImpact.Totals> page : impact.getPagesByBytesAdded()) {
+            writeImpactTotals(globalReport, page.getKey(), page.getValue());
+        }
+    }
 
-    public int getWikidataEditsCount() {
-        return wikidataEditsCount;
+    // Writes the totals of a user or a page: edits, bytes added, removed and net, and edits of every range of deltas.
+    private void writeImpactTotals(ReportSink globalReport, String name, ContributionImpact.Totals totals) throws IOException {
+        StringBuilder line = new StringBuilder("****").append(name).append('*').append(totals.getEdits())
+                .append('*').append(totals.getBytesAdded()).append('*').append(totals.getBytesRemoved()).append('*').append(totals.getNetBytes());
+        for (int range = 0; range < ContributionImpact.RANGES; range++) {
+            line.append('*').append(totals.getRangeCount(range));
+        }
+        globalReport.writeLine(line.append("***").toString());
     }
 
-    public void setWikidataEditsCount(int editsCount) {
-        this.wikidataEditsCount = editsCount;
+    /**
+     * Opens a report file, written by a writer thread if asyncReports is set.
+     * @param file the report file.
+     * @param append true to add to the current content of the file, false to overwrite it.
+     * @return the sink to write the report.
+     * @throws IOException if the file could not be opened.
+     */
+    private ReportSink openReport(File file, boolean append) throws IOException {
+        ReportSink sink = new FileReportSink(file, append);
+        if (this.asyncReports) {
+            sink = new AsyncReportSink(sink);
+        }
+        return sink;
     }
 
-    public int getDssEditsCount() {
-        return dssEditsCount;
+    /**
+     * Closes a report (if it was opened), printing the error if it could not be written.
+     * @param report the report to close (it may be null).
+     */
+    private void closeReport(ReportSink report) {
+        if (report != null) {
+            try {
+                report.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
-    public void setDssEditsCount(int dssEditsCount) {
-        this.dssEditsCount = dssEditsCount;
+    /**
+     * Gets the file of the report of contributions of a window (of the shard of the analyzer, see setShard).
+     */
+    private File reportFile(int window) {
+        return reportFile(window, this.shard, this.shards);
     }
 
-    public int getDssNewItems() {
-        return dssNewItems;
+    /**
+     * Gets the file of the report of contributions of a window written by one of several shards.
+     */
+    private File reportFile(int window, int shard, int shards) {
+        return new File(workingDirForFileName + this.windows.get(window).getReportFilePath() + shardSuffix(shard, shards));
     }
 
-    public void setDssNewItems(int dssNewItems) {
+    /**
+     * Gets the file of the global report of a window (of the shard of the analyzer, see setShard).
+     */
+    private File globalReportFile(int window) {
+        return new File(workingDirForFileName + this.windows.get(window).getGlobalReportFilePath() + shardSuffix(this.shard, this.shards));
+    }
+
+    /**
+     * Gets the directory of the store of contributions of one of several shards.
+     */
+    private File storeDir(int shard, int shards) {
+        return new File(this.contributionStoreDir.getPath() + shardSuffix(shard, shards));
+    }
+
+    /**
+     * Gets the file of the partial counts of one of several shards, next to its report of the first window.
+     */
+    private File partialAggregatesFile(int shard, int shards) {
+        return new File(reportFile(0, shard, shards).getPath() + ".aggregates");
+    }
+
+    /**
+     * Gets the suffix of the files (reports, store, partial counts...) of one of several shards, e.g. ".shard2of4"
+     * (nothing if there is only one).
+     */
+    static String shardSuffix(int shard, int shards) {
+        return shards > 1 ? ".shard" + (shard + 1) + "of" + shards : "";
+    }
+
+    /**
+     * Gets the shard of a participant when the list is split in several shards (see setShard). It only depends on the
+     * name (String.hashCode is the same in every JVM), so all the processes agree on the shards.
+     */
+    static int shardOf(String user, int shards) {
+        return (user.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    /**
+     * Creates empty counts, one per window.
+     */
+    private ContributionAggregates[] newAggregates() {
+        ContributionAggregates[] counts = new ContributionAggregates[this.windows.size()];
+        for (int w = 0; w < counts.length; w++) {
+            counts[w] = new ContributionAggregates();
+        }
+        return counts;
+    }
+
+    /**
+     * Adds counts (one per window) to the counts of the analyzer.
+     */
+    private void mergeIntoWindows(ContributionAggregates[] partials) {
+        for (int w = 0; w < partials.length; w++) {
+            this.windowAggregates[w].merge(partials[w]);
+        }
+    }
+
+    /**
+     * Adds the counts of a participant to the analyzer: in an incremental run, together with the counts kept from the
+     * previous runs, which take the new contributions if the participant was completely read.
+     */
+    private void mergeUserIntoWindows(String user, ContributionAggregates[] partials) {
+        if (this.incrementalState != null) {
+            partials = this.incrementalState.accumulate(user, partials, this.readMarks.remove(user));
+        }
+        mergeIntoWindows(partials);
+    }
+
+
+    /**
+     * Method to analyze all the participants / users, either one after the other or several at the same time
+     * (see setConcurrentUsers). Each participant is analyzed into its own partial counts and reported in its own
+     * temporary files (one per window), which are merged into the global counts and copied into the reports in the
+     * order of the list of participants, so the reports are the same in both modes.
+     * With checkpointing (see setCheckpointing) the progress is recorded in a journal next to the report of the first
+     * window, and a run interrupted before the end goes on where it stopped when it is started again.
+     * An incremental run (see setIncremental) does not use the journal: it goes on from the marks of the participants.
+     * @param reports reports (one per window) in which the contributions of the participants are written.
+     */
+    private void processUsers(ReportSink[] reports) throws IOException {
+
+        final int windowCount = this.windows.size();
+
+        // The contributions of the previous runs are kept in the store of an incremental run.
+        boolean delta = this.incrementalState != null && !this.incrementalState.isEmpty();
+        boolean journaled = this.checkpointing && this.incrementalState == null;
+
+        // Journal of the progress of the run (it goes on with the previous run if it was interrupted).
+        final ProgressJournal journal = journaled ? new ProgressJournal(new File(reportFile(0).getPath() + ".journal"), runId(), windowCount) : null;
+        // The store keeps the contributions of the interrupted run, if the journal goes on with it.
+        openStore(delta || (journal != null && journal.isResumed()));
+
+        // Pool of workers, each of them analyzing one group of participants (see requestGroups) at a time (only one
+        // worker: the participants are analyzed one after the other).
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.concurrentUsers));
+        List<Future<ContributionAggregates[][]>> partials = new ArrayList<Future<ContributionAggregates[][]>>();
+        List<File[]> partialReportFiles = new ArrayList<File[]>();
+        boolean completed = false;
+
+        try {
+            // Each participant is reported in its own temporary files (one per window).
+            for (int i = 0; i < this.users.size(); i++) {
+                File[] userReportFiles = new File[windowCount];
+                for (int w = 0; w < windowCount; w++) {
+                    userReportFiles[w] = new File(reportFile(w).getPath() + ".part" + i);
+                }
+                partialReportFiles.add(userReportFiles);
+            }
+
+            // Submits all the groups, and keeps where the counts of every participant are in the results.
+            List<int[]> groups = requestGroups();
+            int[] groupOfUser = new int[this.users.size()];
+            int[] placeInGroup = new int[this.users.size()];
+            for (int g = 0; g < groups.size(); g++) {
+                int[] group = groups.get(g);
+                final List<String> groupUsers = new ArrayList<String>(group.length);
+                final File[][] groupReportFiles = new File[group.length][];
+                for (int k = 0; k < group.length; k++) {
+                    groupOfUser[group[k]] = g;
+                    placeInGroup[group[k]] = k;
+                    groupUsers.add(this.users.get(group[k]));
+                    groupReportFiles[k] = partialReportFiles.get(group[k]);
+                }
+
+                partials.add(executor.submit(new Callable<ContributionAggregates[][]>() {
+                    public ContributionAggregates[][] call() throws IOException {
+                        return journal != null ? analyzeUsers(groupUsers, groupReportFiles, journal) : analyzeUsers(groupUsers, groupReportFiles);
+                    }
+                }));
+            }
+
+            // Collects the results in the order of the participants: merges the counts and copies the reported contributions.
+            for (int i = 0; i < this.users.size(); i++) {
+                String user = this.users.get(i);
+                ContributionAggregates[] userPartials = partials.get(groupOfUser[i]).get()[placeInGroup[i]];
+                // In an incremental run, the new contributions of a participant that was not completely read are
+                // reported by the run that reads them all (its mark does not move, so they are read again).
+                boolean reported = this.incrementalState == null || this.readMarks.containsKey(user);
+                mergeUserIntoWindows(user, userPartials);
+
+                for (int w = 0; w < windowCount; w++) {
+                    File partialReportFile = partialReportFiles.get(i)[w];
+                    if (!reported) {
+                        partialReportFile.delete();
+                        continue;
+                    }
+                    BufferedReader partialReportReader = new BufferedReader(new InputStreamReader(new FileInputStream(partialReportFile), Charset.defaultCharset()));
+                    try {
+                        String line;
+                        while ((line = partialReportReader.readLine()) != null) {
+                            reports[w].writeLine(line);
+                        }
+                    } finally {
+                        partialReportReader.close();
+                    }
+                    if (journal == null) {
+                        partialReportFile.delete();
+                    }
+                }
+            }
+
+            // The run is over if all the participants were completely read (e.g. not in offline mode with missing pages).
+            completed = true;
+            if (journal != null) {
+                for (String user : this.users) {
+                    completed = completed && journal.getProgress(user).isCompleted();
+                }
+            }
+
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdownNow();
+            if (journal != null) {
+                if (completed) {
+                    // Nothing to resume: the journal and the reports of the participants are no longer needed.
+                    journal.delete();
+                    for (File[] userReportFiles : partialReportFiles) {
+                        for (File partialReportFile : userReportFiles) {
+                            partialReportFile.delete();
+                        }
+                    }
+                } else {
+                    journal.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Identifier of the run for the journal: a journal is only resumed by a run with the same windows and participants,
+     * asked in the same groups (the continuation tokens of a group are not valid for another one), whose counts are
+     * written in the same form.
+     */
+    private String runId() {
+        return windowsId() + this.users.size() + "|" + this.users.hashCode() + "|" + this.usersPerRequest + "|" + ContributionAggregates.FORMAT_VERSION;
+    }
+
+    /**
+     * Identifier of the windows of the analyzer (names, starts and ends), e.g. for the state of incremental runs.
+     */
+    private String windowsId() {
+        StringBuilder windowsId = new StringBuilder();
+        for (TimeWindow window : this.windows) {
+            windowsId.append(window.getName()).append('|').append(window.getStart()).append('|').append(window.getEnd()).append('|');
+        }
+        return windowsId.toString();
+    }
+
+    /**
+     * Groups the participants in the requests of their contributions: registered participants are asked together, up
+     * to usersPerRequest names per request (see setUsersPerRequest), in the order of the list; every anonymous
+     * participant ("IP@IP prefix") is asked alone, with its prefix.
+     * @return the groups, as positions of their participants in the list, in the order of their first participant.
+     */
+    private List<int[]> requestGroups() {
+        List<int[]> groups = new ArrayList<int[]>();
+        // Group of registered participants being filled, and its place in the list of groups.
+        List<Integer> named = new ArrayList<Integer>();
+        int namedPlace = -1;
+        for (int i = 0; i < this.users.size(); i++) {
+            if (this.usersPerRequest <= 1 || this.users.get(i).contains("IP@")) {
+                groups.add(new int[]{i});
+                continue;
+            }
+            if (named.isEmpty()) {
+                namedPlace = groups.size();
+                groups.add(null);
+            }
+            named.add(i);
+            if (named.size() == this.usersPerRequest) {
+                groups.set(namedPlace, Ints.toArray(named));
+                named.clear();
+            }
+        }
+        if (!named.isEmpty()) {
+            groups.set(namedPlace, Ints.toArray(named));
+        }
+        return groups;
+    }
+
+    /**
+     * Method to analyze the contributions of a group of participants, asked in the same requests, into new partial
+     * counts (one set per participant).
+     * Every attempt writes the reports of the participants from the beginning, so they hold the contributions of the
+     * last attempt, as the counts.
+     * @param users names of the participants.
+     * @param reportFiles reports (one per participant and window) in which the contributions of the participants are written.
+     * @return the counts of the contributions of every participant in each window.
+     * @throws IOException if a report could not be opened.
+     */
+    private ContributionAggregates[][] analyzeUsers(List<String> users, File[][] reportFiles) throws IOException {
+
+        ContributionAggregates[][] partials = null;
+
+        //Control variable to check that the method went well. 1:error ; 0:OK.
+        int sstatus = 1;
+
+        // While there is a problem (e.g. Internet broke or the server gave an error) ask again for the contributions of
+        // the participants, waiting more after every attempt, at most MAX_USER_ATTEMPTS times.
+        // Every attempt starts from new counts and empty reports so that nothing is counted or reported twice.
+        int attempt = 0;
+        do {
+            if (attempt > 0 && !waitBeforeAttempt(describe(users), attempt)) {
+                break;
+            }
+            partials = new ContributionAggregates[users.size()][];
+            for (int k = 0; k < partials.length; k++) {
+                partials[k] = newAggregates();
+            }
+            ReportSink[][] reports = new ReportSink[users.size()][reportFiles[0].length];
+            try {
+                for (int k = 0; k < users.size(); k++) {
+                    for (int w = 0; w < reportFiles[k].length; w++) {
+                        reports[k][w] = new FileReportSink(reportFiles[k][w], false);
+                    }
+                }
+                sstatus = processUsersContributions(users, partials, reports, null, null);
+            } finally {
+                closeReports(reports);
+            }
+            attempt++;
+        } while (sstatus == 1 && attempt < MAX_USER_ATTEMPTS);
+
+        if (sstatus == 1) {
+            System.err.println("The contributions of " + describe(users) + " could not be read completely");
+        }
+        return partials;
+    }
+
+    /**
+     * Method to analyze the contributions of a group of participants, asked in the same requests, recording their
+     * progress in a journal.
+     * The analysis goes on from the last page recorded in the journal: the reports of the participants are cut to their
+     * length after that page, and the counts start from the counts recorded up to that page. The participants of a
+     * group are recorded page by page, so they go on from the same page; if they were not all recorded up to the same
+     * page (or a report was lost), they are analyzed again from the beginning. A group already completed is not read again.
+     * @param users names of the participants.
+     * @param reportFiles reports (one per participant and window) in which the contributions of the participants are written.
+     * @param journal journal of the progress of the run.
+     * @return the counts of the contributions of every participant in each window.
+     * @throws IOException if the journal could not be written.
+     */
+    private ContributionAggregates[][] analyzeUsers(List<String> users, File[][] reportFiles, ProgressJournal journal) throws IOException {
+
+        int userCount = users.size();
+        ProgressJournal.UserProgress[] progress = new ProgressJournal.UserProgress[userCount];
+        for (int k = 0; k < userCount; k++) {
+            progress[k] = journal.getProgress(users.get(k));
+        }
+
+        ContributionAggregates[][] partials = null;
+
+        //Control variable to check that the method went well. 1:error ; 0:OK.
+        int sstatus = 1;
+
+        // Every attempt goes on from the last page recorded in the journal, at most MAX_USER_ATTEMPTS times.
+        int attempt = 0;
+        do {
+            if (attempt > 0 && !waitBeforeAttempt(describe(users), attempt)) {
+                break;
+            }
+            boolean resume = progress[0].isStarted();
+            for (int k = 0; resume && k < userCount; k++) {
+                resume = progress[k].isStarted() && progress[k].isCompleted() == progress[0].isCompleted()
+                        && (progress[k].getContinueToken() == null ? progress[0].getContinueToken() == null : progress[k].getContinueToken().equals(progress[0].getContinueToken()));
+                for (int w = 0; resume && w < reportFiles[k].length; w++) {
+                    resume = reportFiles[k][w].length() >= progress[k].getReportLength(w);
+                }
+            }
+            if (!resume) {
+                // A report of a participant was lost (or the group was not recorded up to the same page): it is
+                // analyzed again from the beginning.
+                for (int k = 0; k < userCount; k++) {
+                    if (progress[k].isStarted()) {
+                        journal.recordReset(progress[k]);
+                    }
+                }
+            }
+
+            partials = new ContributionAggregates[userCount][];
+            if (resume) {
+                // Drops what was reported after the last recorded page.
+                for (int k = 0; k < userCount; k++) {
+                    for (int w = 0; w < reportFiles[k].length; w++) {
+                        RandomAccessFile truncate = new RandomAccessFile(reportFiles[k][w], "rw");
+                        try {
+                            truncate.setLength(progress[k].getReportLength(w));
+                        } finally {
+                            truncate.close();
+                        }
+                    }
+                    partials[k] = progress[k].copyOfAggregates();
+                }
+                if (progress[0].isCompleted()) {
+                    return partials;
+                }
+            } else {
+                for (int k = 0; k < userCount; k++) {
+                    partials[k] = newAggregates();
+                }
+            }
+
+            ReportSink[][] reports = new ReportSink[userCount][reportFiles[0].length];
+            try {
+                for (int k = 0; k < userCount; k++) {
+                    for (int w = 0; w < reportFiles[k].length; w++) {
+                        reports[k][w] = new FileReportSink(reportFiles[k][w], resume);
+                    }
+                }
+                sstatus = processUsersContributions(users, partials, reports, journal, progress);
+            } finally {
+                closeReports(reports);
+            }
+            attempt++;
+        } while (sstatus == 1 && attempt < MAX_USER_ATTEMPTS);
+
+        if (sstatus == 1) {
+            // The next run goes on from the last recorded page.
+            System.err.println("The contributions of " + describe(users) + " could not be read completely");
+        }
+        return partials;
+    }
+
+    // Closes the reports (one per participant and window) that were opened.
+    private void closeReports(ReportSink[][] reports) {
+        for (ReportSink[] userReports : reports) {
+            for (ReportSink report : userReports) {
+                closeReport(report);
+            }
+        }
+    }
+
+    // Names of a group of participants, for the messages.
+    private static String describe(List<String> users) {
+        return users.size() == 1 ? users.get(0) : users.toString();
+    }
+
+    /**
+     * Waits before analyzing a participant again, the longer the more attempts failed (see RequestScheduler.backoff).
+     * @param user name of the participant.
+     * @param attempt number of failed attempts.
+     * @return false if the thread was interrupted while waiting.
+     */
+    private boolean waitBeforeAttempt(String user, int attempt) {
+        try {
+            RequestScheduler.sleep(RequestScheduler.getShared().backoff(attempt));
+            return true;
+        } catch (InterruptedIOException e) {
+            System.err.println("Interrupted while waiting to analyze " + user + " again");
+            return false;
+        }
+    }
+
+    /**
+     * Method to get all the contributions of a particular user or participant and add them to the counts of the analyzer.
+     * @param userName
+     * @return 1 if something went wrong 0 if everything went OK.
+     */
+    public int processOneUserContributions(String userName) {
+
+        ContributionAggregates[] partials = newAggregates();
+        int result = 1;
+        ReportSink[] reports = new ReportSink[this.windows.size()];
+        try {
+            for (int w = 0; w < reports.length; w++) {
+                reports[w] = openReport(reportFile(w), true);
+            }
+            result = processOneUserContributions(userName, partials, reports, null, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (ReportSink report : reports) {
+                closeReport(report);
+            }
+        }
+        if (result == 0) {
+            mergeIntoWindows(partials);
+        }
+        return result;
+    }
+
+    /**
+     * Method to get all the contributions of a particular user or participant (see processUsersContributions).
+     * @param userName
+     * @param partials counts (one per window) in which the contributions of the user are added.
+     * @param reports reports (one per window) in which the contributions of the user are written (FileReportSinks if there is a journal).
+     * @param journal journal in which the progress is recorded (null: no journal).
+     * @param progress progress of the user in the journal (null if there is no journal).
+     * @return 1 if something went wrong 0 if everything went OK.
+     */
+    int processOneUserContributions(String userName, ContributionAggregates[] partials, ReportSink[] reports, ProgressJournal journal, ProgressJournal.UserProgress progress) {
+        return processUsersContributions(Collections.singletonList(userName), new ContributionAggregates[][]{partials}, new ReportSink[][]{reports},
+                journal, progress == null ? null : new ProgressJournal.UserProgress[]{progress});
+    }
+
+    /**
+     * Method to get all the contributions of a group of users or participants, asked in the same requests (several
+     * registered users in ucuser, or one user; see requestGroups).
+     * The contributions are requested page by page (up to 500 contributions per page), following the continuation
+     * token returned by the Wikidata API until the period of time of the analyzer has been completely read. The IP
+     * ranges of an anonymous participant are asked with a few ucuserprefix queries (see IpRange.prefixQueries), one
+     * after the other.
+     * Each page is processed as soon as it arrives and discarded afterwards: every contribution is given to its user
+     * (by the user of the contribution, for a group of several users or an anonymous participant, whose ranges are
+     * matched exactly), and counted and reported in the windows that contain its timestamp.
+     * With a journal, every page is recorded for every user of the group once it has been counted and reported, and
+     * the contributions are read from the page after the last recorded one.
+     * In an incremental run, only the contributions after the oldest high-water mark of the users are read (oldest
+     * first), the ones before the mark of their user are skipped, and the newest one read of every user becomes its
+     * mark if all of them were read.
+     * @param userNames names of the users (one "IP@IP ranges" entry for anonymous participants).
+     * @param partials counts (one per user and window) in which the contributions of the users are added.
+     * @param reports reports (one per user and window) in which the contributions of the users are written (FileReportSinks if there is a journal).
+     * @param journal journal in which the progress is recorded (null: no journal).
+     * @param progress progress of the users in the journal (null if there is no journal).
+     * @return 1 if something went wrong 0 if everything went OK.
+     */
+    int processUsersContributions(List<String> userNames, ContributionAggregates[][] partials, ReportSink[][] reports, ProgressJournal journal, ProgressJournal.UserProgress[] progress) {
+
+        // Control variable to return (by default everything OK).
+        int result = 0;
+
+        int windowCount = this.windows.size();
+        int userCount = userNames.size();
+
+        // Whether the analysis goes on from a page recorded in the journal (the same page for all the users).
+        boolean resumed = progress != null && progress[0].isStarted();
+
+        // Users asked in the requests: "|" between the names of a group, or the prefixes of the ranges of an anonymous
+        // participant (one query after the other). The contributions are given to the users by their user: the API
+        // answers with its own form of the names, and the prefixes also give addresses out of the ranges.
+        List<String> queries;
+        ParticipantMatcher matcher = null;
+        Map<String, Integer> userIndexes = null;
+        boolean anonymous = userCount == 1 && userNames.get(0).contains("IP@");
+        if (anonymous) {
+            queries = new ArrayList<String>();
+            for (String prefix : IpRange.prefixQueries(IpRange.parseList(userNames.get(0).split("@")[1]))) {
+                queries.add("IP@" + prefix);
+            }
+        } else {
+            StringBuilder requestUsers = new StringBuilder();
+            for (String userName : userNames) {
+                requestUsers.append(requestUsers.length() > 0 ? "|" : "").append(userName);
+            }
+            queries = Collections.singletonList(requestUsers.toString());
+        }
+        if (userCount > 1 || anonymous) {
+            matcher = new ParticipantMatcher(userNames);
+            userIndexes = new HashMap<String, Integer>();
+            for (int k = 0; k < userCount; k++) {
+                userIndexes.put(userNames.get(k), k);
+            }
+        }
+
+        // Query and continuation token of the next page of contributions (null for the first page of a query). With
+        // several queries, the journal records both as "<query>#<token>".
+        int query = 0;
+        String continueToken = resumed ? progress[0].getContinueToken() : null;
+        if (continueToken != null && queries.size() > 1) {
+            int separator = continueToken.indexOf('#');
+            query = Integer.parseInt(continueToken.substring(0, separator));
+            continueToken = separator + 1 < continueToken.length() ? continueToken.substring(separator + 1) : null;
+        }
+        // Whether there are still pages of contributions to read.
+        boolean morePages = true;
+
+        // In an incremental run: marks of the users in the previous runs, and when the contributions to read start.
+        IncrementalState.HighWaterMark[] marks = null;
+        IncrementalState.HighWaterMark[] newestRead = null;
+        String from = null;
+        if (this.incrementalState != null) {
+            marks = new IncrementalState.HighWaterMark[userCount];
+            newestRead = new IncrementalState.HighWaterMark[userCount];
+            long fromEpoch = Long.MAX_VALUE;
+            for (int k = 0; k < userCount; k++) {
+                marks[k] = this.incrementalState.getMark(userNames.get(k));
+                newestRead[k] = marks[k] != null ? marks[k] : new IncrementalState.HighWaterMark(0, Timestamps.parse(this.start));
+                fromEpoch = Math.min(fromEpoch, newestRead[k].getEpochSeconds());
+                this.readMarks.remove(userNames.get(k));
+            }
+            from = Timestamps.format(fromEpoch);
+        }
+
+        if (!resumed) {
+            try {
+                for (int k = 0; k < userCount; k++) {
+                    for (ReportSink report : reports[k]) {
+                        report.writeLine("********READING CONTRIBUTIONS of *****" + userNames.get(k) + "***");
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                // If there was an exception, return 1 to show that there was a problem.
+                result = 1;
+            }
+        }
+
+        // Type and language of the contribution being counted.
+        Autosummary autosummary = new Autosummary();
+
+        // Reads all the pages of contributions of the users.
+        while (morePages) {
+
+            // Contributions of the current page, in the order of the response (at most 500); null if the page could not be read.
+            List<Contribution> pageContributions = null;
+            // Continuation token given in the current page (null if it is the last page).
+            String nextContinueToken = null;
+
+            try {
+                List<Contribution> readContributions = new ArrayList<Contribution>();
+                nextContinueToken = readContributionsPage(queries.get(query), from, continueToken, readContributions);
+                pageContributions = readContributions;
+
+            } catch (ResponseCache.CacheMissException missE) {
+                // Offline analysis and the page was never downloaded: the rest of the contributions of the users cannot be read.
+                System.err.println(missE.getMessage());
+                break;
+            } catch (IOException e) {
+                // Something went wrong (e.g. the server was offline) and the page could not be read even after asking
+                // again (see RequestScheduler). Return 1 to show that there was a problem.
+                e.printStackTrace();
+                result = 1;
+                break;
+            }
+
+            if (pageContributions != null) {
+                // The page has been completely read: counts and reports its contributions in their windows.
+                RunMetrics metrics = RunMetrics.getShared();
+                metrics.addContributions(pageContributions.size());
+                long started = metrics.start();
+                ContributionAggregates[][] pageCounts = new ContributionAggregates[userCount][];
+                int[][] pageEdits = new int[userCount][windowCount];
+                for (int k = 0; k < userCount; k++) {
+                    pageCounts[k] = newAggregates();
+                }
+                try {
+                    for (Contribution contribution : pageContributions) {
+                        // User of the contribution in the group.
+                        int k = 0;
+                        if (matcher != null) {
+                            Integer index = userIndexes.get(matcher.match(contribution.user));
+                            if (index == null) {
+                                continue;
+                            }
+                            k = index;
+                        }
+                        if (newestRead != null) {
+                            // The contributions before the mark of the user (or of its second) were already counted.
+                            if (marks[k] != null && contribution.revId <= marks[k].getRevId()) {
+                                continue;
+                            }
+                            newestRead[k] = newestRead[k].max(contribution);
+                        }
+                        // The contribution is classified once, whatever the number of windows it falls in.
+                        EditTypeClassifier.parse(contribution.comment, autosummary);
+                        if (this.storeWriter != null) {
+                            this.storeWriter.append(contribution, autosummary);
+                        }
+                        boolean counted = false;
+                        for (int w = 0; w < windowCount; w++) {
+                            if (this.windows.get(w).contains(contribution.epochSeconds)) {
+                                reportContribution(reports[k][w], contribution);
+                                countContribution(pageCounts[k][w], contribution, autosummary);
+                                pageEdits[k][w]++;
+                                counted = true;
+                            }
+                        }
+                        // The edited item is looked up as soon as it is first seen (waiting if the lookups are behind).
+                        if (counted && this.enrichment != null) {
+                            int itemId = ItemIdSet.parse(contribution.title);
+                            if (itemId > 0) {
+                                this.enrichment.offer(itemId);
+                            }
+                        }
+                    }
+                    //Creates the <key,Value> entry in the map with the user name and his/her number of edits in the page.
+                    for (int k = 0; k < userCount; k++) {
+                        for (int w = 0; w < windowCount; w++) {
+                            pageCounts[k][w].mapEditsOfUsers.put(userNames.get(k), pageEdits[k][w]);
+                        }
+                    }
+
+                    metrics.stop(RunMetrics.PAGE_PROCESSING, started);
+
+                    if (journal != null) {
+                        // Records the page once its contributions are in the report files (and in the store).
+                        started = metrics.start();
+                        String nextPosition = nextContinueToken;
+                        if (queries.size() > 1) {
+                            nextPosition = nextContinueToken != null ? query + "#" + nextContinueToken : (query + 1 < queries.size() ? (query + 1) + "#" : null);
+                        }
+                        if (this.storeWriter != null) {
+                            this.storeWriter.flush();
+                        }
+                        for (int k = 0; k < userCount; k++) {
+                            long[] reportLengths = new long[windowCount];
+                            for (int w = 0; w < windowCount; w++) {
+                                reports[k][w].flush();
+                                reportLengths[w] = ((FileReportSink) reports[k][w]).getFile().length();
+                            }
+                            journal.recordPage(progress[k], nextPosition, reportLengths, pageCounts[k]);
+                        }
+                        metrics.stop(RunMetrics.JOURNAL, started);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    // The report (or the journal) could not be written: return 1 to show that there was a problem.
+                    return 1;
+                }
+                for (int k = 0; k < userCount; k++) {
+                    for (int w = 0; w < windowCount; w++) {
+                        partials[k][w].merge(pageCounts[k][w]);
+                    }
+                }
+
+                // The page was read properly -- go on with the next page, if any (of the same query or the next one).
+                continueToken = nextContinueToken;
+                if (continueToken == null) {
+                    query++;
+                }
+                morePages = query < queries.size();
+            }
+        }
+
+        for (int k = 0; k < userCount; k++) {
+            // Users without contributions are also in the map.
+            for (ContributionAggregates partial : partials[k]) {
+                if (!partial.mapEditsOfUsers.containsKey(userNames.get(k))) {
+                    partial.mapEditsOfUsers.put(userNames.get(k), 0);
+                }
+            }
+
+            // The mark of the user only moves if all its new contributions were read.
+            if (newestRead != null && result == 0 && !morePages) {
+                this.readMarks.put(userNames.get(k), newestRead[k]);
+            }
+        }
+
+        // Always return result (1 / 0).
+        return result;
+
+    }
+
+    /**
+     * Reads one page of contributions of a user, from the cache of responses if it is there and otherwise from the
+     * Wikidata API (storing the response in the cache, if there is one).
+     * @param userName name of the user (or names of several users separated by "|"), or "IP@IP prefix" for a prefix of the addresses of anonymous participants.
+     * @param from timestamp from which the contributions are read, oldest first, in an incremental run (null: all the
+     *             contributions of the analyzed period of time, newest first).
+     * @param continueToken continuation token given by the previous page (null for the first page).
+     * @param contributions list to which the contributions of the page are added.
+     * @return the continuation token of the next page, or null if it was the last page.
+     * @throws IOException if the page could not be read (ResponseCache.CacheMissException if it is not in the cache in offline mode).
+     */
+    private String readContributionsPage(String userName, String from, String continueToken, List<Contribution> contributions) throws IOException {
+
+        RunMetrics metrics = RunMetrics.getShared();
+        long pageStarted = metrics.start();
+        try {
+            return readContributionsPage(userName, from, continueToken, contributions, metrics);
+        } finally {
+            metrics.stop(RunMetrics.USERCONTRIBS_PAGE, pageStarted);
+        }
+    }
+
+    /**
+     * Reads one page of contributions of a user (see readContributionsPage), timing its parsing in the run metrics.
+     */
+    private String readContributionsPage(String userName, String from, String continueToken, List<Contribution> contributions, RunMetrics metrics) throws IOException {
+
+        String cacheKey = "usercontribs|" + userName + "|" + (from == null ? this.start : "newer|" + from) + "|" + this.end + "|" + (continueToken == null ? "" : continueToken);
+
+        // Reads the page from the cache of responses, if it is there. In an incremental run the pages are only read from
+        // the cache offline: contributions may have been made since they were stored.
+        if (this.responseCache != null && (from == null || this.responseCache.isOffline())) {
+            InputStream cached = this.responseCache.isOffline() ? this.responseCache.openExisting(cacheKey) : this.responseCache.open(cacheKey);
+            if (cached != null) {
+                long started = metrics.start();
+                try {
+                    return UserContribsReader.readPage(cached, contributions);
+                } finally {
+                    metrics.stop(RunMetrics.JSON_PARSE, started);
+                    cached.close();
+                }
+            }
+        }
+
+        // Creates the HTTP GET request of the page and asks for a JSON response.
+        String url = buildUserContributionsURL(userName, from, continueToken);
+        HttpGet getContributionsOfUser = new HttpGet(url);
+        getContributionsOfUser.setHeader("Accept", "application/json");
+
+        RequestScheduler scheduler = RequestScheduler.getShared();
+        WikidataTransport transport = scheduler.getTransport();
+        HttpResponse response = null;
+        try {
+            //Execute the HTTP GET request (waiting for its turn and asking again if it fails) and obtain the response.
+            response = scheduler.execute(getContributionsOfUser);
+
+            // Gets the entity in the response (body).
+            HttpEntity responseEntity = response.getEntity();
+            if (responseEntity == null) {
+                throw new IOException("The Wikidata API answered without content to " + url);
+            }
+
+            if (this.responseCache == null) {
+                // Reads the body as a stream.
+                InputStream in = responseEntity.getContent();
+                long started = metrics.start();
+                try {
+                    return UserContribsReader.readPage(in, contributions);
+                } finally {
+                    metrics.stop(RunMetrics.JSON_PARSE, started);
+                    in.close();
+                }
+            }
+
+            // Reads the page before storing it, so that responses with errors are not cached.
+            byte[] body = EntityUtils.toByteArray(responseEntity);
+            long started = metrics.start();
+            String nextContinueToken = UserContribsReader.readPage(new ByteArrayInputStream(body), contributions);
+            metrics.stop(RunMetrics.JSON_PARSE, started);
+            this.responseCache.store(cacheKey, body);
+            return nextContinueToken;
+
+        } finally {
+            // Gives the connection back to the pool.
+            transport.release(response);
+        }
+    }
+
+    /**
+     * Writes one contribution in the report (only the properties given by the API).
+     * @param report report in which the contribution is written.
+     * @param contribution the contribution.
+     */
+    private void reportContribution(ReportSink report, Contribution contribution) throws IOException {
+
+        // Write the processed contribution in the file.
+        report.writeLine("--- new contribution ---");
+
+        if (contribution.userId != -1) {
+            report.writeLine("userid: " + contribution.userId);
+        }
+        if (contribution.user != null) {
+            report.writeLine("user name (user): " + contribution.user);
+        }
+        if (contribution.pageId != -1) {
+            report.writeLine("page id: " + contribution.pageId);
+        }
+        if (contribution.revId != -1) {
+            report.writeLine("rev id: " + contribution.revId);
+        }
+        if (contribution.parentId != -1) {
+            report.writeLine("parent id: " + contribution.parentId);
+        }
+        if (contribution.ns != -1) {
+            report.writeLine("ns: " + contribution.ns);
+        }
+        if (contribution.title != null) {
+            report.writeLine("title (Item Id): " + contribution.title);
+        }
+        if (contribution.timestamp != null) {
+            report.writeLine("timestamp: " + contribution.timestamp);
+        }
+        if (contribution.comment != null) {
+            report.writeLine("comment: " + contribution.comment);
+        }
+        if (contribution.size != -1) {
+            report.writeLine("size: " + contribution.size);
+        }
+    }
+
+    /**
+     * Adds one contribution to the counts (edits, types of edits, languages and edited items).
+     * @param partial counts in which the contribution is added.
+     * @param contribution the contribution.
+     */
+    void countContribution(ContributionAggregates partial, Contribution contribution) {
+
+        // Gets the type and the language of the edit from its autosummary.
+        Autosummary autosummary = new Autosummary();
+        EditTypeClassifier.parse(contribution.comment, autosummary);
+        countContribution(partial, contribution, autosummary);
+    }
+
+    /**
+     * Adds one contribution, already classified, to the counts (edits, types of edits, languages and edited items).
+     * @param partial counts in which the contribution is added.
+     * @param contribution the contribution.
+     * @param autosummary type and language of the contribution (see EditTypeClassifier.parse).
+     */
+    void countContribution(ContributionAggregates partial, Contribution contribution, Autosummary autosummary) {
+
+        String title = contribution.title != null ? contribution.title : "";
+        partial.count(title, autosummary.type, autosummary.language != null ? LanguageCodes.intern(autosummary.language) : -1);
+    }
+
+    /**
+     * Builds the URL of the API call to get one page of contributions of a user.
+     * @param userName name of the user (or names of several users separated by "|"), or "IP@IP prefix" for a prefix of the addresses of anonymous participants.
+     * @param from timestamp from which the contributions are asked, oldest first (null: the analyzed period of time, newest first).
+     * @param continueToken continuation token given by the previous page (null for the first page).
+     * @return the URL of the action:query / list:usercontribs call.
+     */
+    private String buildUserContributionsURL(String userName, String from, String continueToken) {
+
+        String userParameter;
+
+        /* The user name which is read from the input file containing all the user names of the participants of the event
+         * can be either a complete user name or a string of type "IP@IP ranges" (in case the user edited anonymously without logging in),
+         * asked here as "IP@IP prefix" queries (see IpRange.prefixQueries).
+         * We track IPs with a prefix belonging to the UPV/EHU university, Lejona.
+         * By exploration we found out that this was: 158.227.136.
+         */
+        if (userName.contains("IP@")) {
+            // Gets the IP prefix and uses the "ucuserprefix" parameter of the Wikidata API.
+            String[] split = userName.split("@");
+            String IPprefix = split[1];
+            userParameter = "&ucuserprefix=" + encode(IPprefix);
+        } else {
+            // Complete user name -- the participant was logged in while editing. Uses the "ucuser" parameter of the Wikidata API,
+            // which takes several names separated by "|" (not allowed as such in a URL, nor in a user name). Every name is
+            // encoded, since names may have spaces, "&", "+", "#" or non-ASCII characters.
+            StringBuilder names = new StringBuilder();
+            for (String name : userName.split("\\|")) {
+                if (names.length() > 0) {
+                    names.append("%7C");
+                }
+                names.append(encode(name));
+            }
+            userParameter = "&ucuser=" + names;
+        }
+
+        // By default the API lists the contributions from ucstart back to ucend; with ucdir=newer, from ucstart forward.
+        String period = from == null ? "&ucstart=" + this.end + "&ucend=" + this.start : "&ucdir=newer&ucstart=" + from + "&ucend=" + this.end;
+        String url = "https://www.wikidata.org/w/api.php?action=query&list=usercontribs&format=json" + period + userParameter + "&uclimit=500" + "&maxlag=" + RequestScheduler.getShared().getMaxLag();
+
+        // Asks for the continuation block in the response and, if it is not the first page, for the next page.
+        if (continueToken == null) {
+            url = url + "&continue=";
+        } else {
+            url = url + "&continue=" + encode("-||") + "&uccontinue=" + encode(continueToken);
+        }
+
+        return url;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    // Getter and setters of class variables.
+
+    public int getWikidataEditsCount() {
+        return aggregates.wikidataEditsCount;
+    }
+
+    public void setWikidataEditsCount(int editsCount) {
+        this.aggregates.wikidataEditsCount = editsCount;
+    }
+
+    public int getDssEditsCount() {
+        return dssEditsCount;
+    }
+
+    public void setDssEditsCount(int dssEditsCount) {
+        this.dssEditsCount = dssEditsCount;
+    }
+
+    public int getDssNewItems() {
+        return dssNewItems;
+    }
+
+    public void setDssNewItems(int dssNewItems) {
         this.dssNewItems = dssNewItems;
     }
 
@@ -700,4 +1913,146 @@ public class DSSWEAnalyzer {
     public void setNewItems(int newItems) {
         this.newItems = newItems;
     }
+
+    public int getConcurrentUsers() {
+        return concurrentUsers;
+    }
+
+    public void setConcurrentUsers(int concurrentUsers) {
+        this.concurrentUsers = concurrentUsers;
+    }
+
+    public boolean isAsyncReports() {
+        return asyncReports;
+    }
+
+    public void setAsyncReports(boolean asyncReports) {
+        this.asyncReports = asyncReports;
+    }
+
+    public int getTopLanguages() {
+        return topLanguages;
+    }
+
+    public void setTopLanguages(int topLanguages) {
+        this.topLanguages = topLanguages;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public boolean isCheckpointing() {
+        return checkpointing;
+    }
+
+    public void setCheckpointing(boolean checkpointing) {
+        this.checkpointing = checkpointing;
+    }
+
+    public boolean isLookUpEditedItems() {
+        return lookUpEditedItems;
+    }
+
+    public void setLookUpEditedItems(boolean lookUpEditedItems) {
+        this.lookUpEditedItems = lookUpEditedItems;
+    }
+
+    public boolean isByteDeltas() {
+        return byteDeltas;
+    }
+
+    /**
+     * Sets whether the bytes added and removed by the edits are measured (see ContributionImpact) and written in the
+     * global reports. They are measured from the store of contributions (see setContributionStoreDir): without store,
+     * they are not measured.
+     */
+    public void setByteDeltas(boolean byteDeltas) {
+        this.byteDeltas = byteDeltas;
+    }
+
+    public int getConcurrentLookups() {
+        return concurrentLookups;
+    }
+
+    public void setConcurrentLookups(int concurrentLookups) {
+        this.concurrentLookups = concurrentLookups;
+    }
+
+    public ItemFactsCache getItemFactsCache() {
+        return itemFactsCache;
+    }
+
+    public void setItemFactsCache(ItemFactsCache itemFactsCache) {
+        this.itemFactsCache = itemFactsCache;
+    }
+
+    public File getContributionStoreDir() {
+        return contributionStoreDir;
+    }
+
+    public void setContributionStoreDir(File contributionStoreDir) {
+        this.contributionStoreDir = contributionStoreDir;
+    }
+
+    public int getUsersPerRequest() {
+        return usersPerRequest;
+    }
+
+    /**
+     * Sets the number of registered participants whose contributions are asked in the same requests (ucuser takes up
+     * to 50 names, 500 for bots): a request gives the contributions of all of them, which are given back to every
+     * participant by the user of the contribution. Anonymous participants are always asked one by one.
+     */
+    public void setUsersPerRequest(int usersPerRequest) {
+        this.usersPerRequest = usersPerRequest;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Makes the analyzer analyze only one shard of its list of participants, so that the list can be split among several
+     * processes (on one or several machines): every participant is in the shard given by the hash of its name (see
+     * shardOf). The reports, store, journal and state of the shard are kept in their own files (see shardSuffix), and
+     * processByUsers also writes the partial counts of the shard, which are merged by processShards.
+     * It has to be called before processByUsers.
+     * @param shard the shard analyzed (from 0 to shards - 1).
+     * @param shards the number of shards.
+     */
+    public void setShard(int shard, int shards) {
+        if (shards < 1 || shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("Not a shard of " + shards + ": " + shard);
+        }
+        this.shard = shard;
+        this.shards = shards;
+        Iterator<String> users = this.users.iterator();
+        while (users.hasNext()) {
+            if (shardOf(users.next(), shards) != shard) {
+                users.remove();
+            }
+        }
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets whether processByUsers only reads the contributions made since the previous run: the counts and the
+     * high-water mark of every participant are kept in a state next to the report of the first window (see
+     * IncrementalState), the new contributions are added to the reports and the global reports are written again.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
 }
@@ -0,0 +1,81 @@
+/**
+ * @author csarasua
+ * Types of edits, identified by the action (and subaction) of the autosummary that Wikibase writes (between "/*" and
+ * its closing mark) at the beginning of the comment of an edit, e.g. "wbsetclaim-create:2||1".
+ * Defined by the Wikidata API: https://www.wikidata.org/w/api.php
+ * A type whose key has no subaction (e.g. "wbsetqualifier") covers every subaction without a type of its own.
+ * The reports list the types in the order in which they are declared.
+ */
+public enum EditType {
+
+    WBEDITENTITY_CREATE("wbeditentity-create"),
+    WBEDITENTITY_UPDATE("wbeditentity-update"),
+    WBSETCLAIM_CREATE("wbsetclaim-create"),
+    WBSETCLAIM_UPDATE("wbsetclaim-update"),
+    WBCREATECLAIM_CREATE("wbcreateclaim-create"),
+    WBSETCLAIMVALUE("wbsetclaimvalue"),
+    WBSETREFERENCE_ADD("wbsetreference-add"),
+    WBSETREFERENCE_SET("wbsetreference-set"),
+    WBSETQUALIFIER("wbsetqualifier"),
+    WBSETLABEL_ADD("wbsetlabel-add"),
+    WBSETLABEL_SET("wbsetlabel-set"),
+    WBSETLABEL_REMOVE("wbsetlabel-remove"),
+    WBSETDESCRIPTION_ADD("wbsetdescription-add"),
+    WBSETDESCRIPTION_SET("wbsetdescription-set"),
+    WBSETDESCRIPTION_REMOVE("wbsetdescription-remove"),
+    WBREMOVECLAIMS_REMOVE("wbremoveclaims-remove"),
+    WBREMOVEREFERENCES_REMOVE("wbremovereferences-remove"),
+    WBREMOVEQUALIFIERS_REMOVE("wbremovequalifiers-remove"),
+    WBSETALIASES_ADD("wbsetaliases-add"),
+    WBSETALIASES_ADD_REMOVE("wbsetaliases-add-remove"),
+    WBSETALIASES_SET("wbsetaliases-set"),
+    WBSETALIASES_UPDATE("wbsetaliases-update"),
+    WBSETALIASES_REMOVE("wbsetaliases-remove"),
+    WBSETSITELINK_ADD("wbsetsitelink-add"),
+    WBSETSITELINK_SET("wbsetsitelink-set"),
+    WBSETSITELINK_REMOVE("wbsetsitelink-remove"),
+    WBLINKTITLES_CONNECT("wblinktitles-connect"),
+    WBMERGEITEMS_FROM("wbmergeitems-from"),
+    WBMERGEITEMS_TO("wbmergeitems-to"),
+    WBCREATEREDIRECT("wbcreateredirect"),
+    CLIENTSITELINK_UPDATE("clientsitelink-update"),
+    CLIENTSITELINK_REMOVE("clientsitelink-remove"),
+
+    // Autosummary of an action that is not listed above.
+    OTHER_ACTION(null),
+    // Comment without autosummary (e.g. manual edits, undos).
+    NO_AUTOSUMMARY(null);
+
+
+    // Action and subaction of the autosummary (null for OTHER_ACTION and NO_AUTOSUMMARY).
+    private final String key;
+
+    EditType(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the text used for the type in the reports.
+     * @return the label of the type.
+     */
+    public String getReportLabel() {
+        if (this == OTHER_ACTION) {
+            return "other action";
+        } else if (this == NO_AUTOSUMMARY) {
+            return "no autosummary";
+        }
+        return key;
+    }
+
+    /**
+     * Whether the type creates or edits an entity as a whole (wbeditentity).
+     * @return true for the wbeditentity types.
+     */
+    public boolean isEditEntity() {
+        return this == WBEDITENTITY_CREATE || this == WBEDITENTITY_UPDATE;
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * @author csarasua
+ * Classifier of edits by the autosummary at the beginning of their comment (see EditType).
+ * The action of the autosummary is read character by character through a trie built from the keys of EditType, and
+ * its type is the one of the longest key it starts with that ends at a "-" or at its end (e.g. "wbeditentity-create-item"
+ * is a wbeditentity-create edit, and "wbsetqualifier-add" a wbsetqualifier edit). The language is taken from its
+ * parameters in the same pass, so the comment is read only once and only up to the end of the autosummary.
+ */
+public final class EditTypeClassifier {
+
+    // Root of the trie of keys of the edit types.
+    private static final Node ROOT = buildTrie();
+
+    // Node of the trie: one child per character ('a'-'z' and '-') and the type whose key ends in the node.
+    private static final class Node {
+        final Node[] children = new Node[27];
+        EditType type;
+    }
+
+    private EditTypeClassifier() {
+    }
+
+    /**
+     * Gets the type of an edit.
+     * @param comment the comment of the edit (it may be null).
+     * @return the type of the autosummary of the comment; OTHER_ACTION if its action is not known and NO_AUTOSUMMARY
+     * if the comment has no autosummary.
+     */
+    public static EditType classify(String comment) {
+        Autosummary autosummary = new Autosummary();
+        parse(comment, autosummary);
+        return autosummary.type;
+    }
+
+    /**
+     * Reads the type and the language of an edit from the autosummary of its comment, e.g. "wbsetlabel-add:1|en".
+     * The language is the first parameter after the number of the autosummary, if it looks like a language code.
+     * @param comment the comment of the edit (it may be null).
+     * @param result object in which the type and the language are set.
+     */
+    public static void parse(String comment, Autosummary result) {
+
+        result.type = EditType.NO_AUTOSUMMARY;
+        result.language = null;
+
+        if (comment == null) {
+            return;
+        }
+        int start = comment.indexOf("/*");
+        if (start < 0) {
+            return;
+        }
+
+        int length = comment.length();
+        int i = start + 2;
+        while (i < length && comment.charAt(i) == ' ') {
+            i++;
+        }
+
+        // Type of the longest key read so far that ends at a boundary of the action-subaction: the action itself
+        // (e.g. "wbsetqualifier" for "wbsetqualifier-add") or a subaction that a longer one starts with (e.g.
+        // "wbeditentity-create" for "wbeditentity-create-item").
+        EditType longestType = null;
+        Node node = ROOT;
+
+        for (; i < length; i++) {
+            char c = comment.charAt(i);
+            if (c == ':' || c == ' ' || c == '*') {
+                // End of the action-subaction.
+                break;
+            }
+            if (c == '-' && node.type != null) {
+                longestType = node.type;
+            }
+            int child = childIndex(c);
+            if (child < 0 || node.children[child] == null) {
+                // Not a known key: only a shorter key can match.
+                node = null;
+                break;
+            }
+            node = node.children[child];
+        }
+
+        if (node != null && node.type != null) {
+            longestType = node.type;
+        }
+        result.type = longestType != null ? longestType : EditType.OTHER_ACTION;
+
+        // Goes on reading the parameters: "<number>|<language>|...".
+        while (i < length && comment.charAt(i) != ':' && comment.charAt(i) != '*') {
+            i++;
+        }
+        if (i >= length || comment.charAt(i) != ':') {
+            return;
+        }
+        while (i < length && comment.charAt(i) != '|' && comment.charAt(i) != '*') {
+            i++;
+        }
+        if (i >= length || comment.charAt(i) != '|') {
+            return;
+        }
+        int languageStart = i + 1;
+        int languageEnd = languageStart;
+        while (languageEnd < length) {
+            char c = comment.charAt(languageEnd);
+            if (c == '|' || c == ' ' || c == '*') {
+                break;
+            }
+            languageEnd++;
+        }
+        if (isLanguageCode(comment, languageStart, languageEnd)) {
+            result.language = comment.substring(languageStart, languageEnd);
+        }
+    }
+
+    /**
+     * Whether a part of a text is a language code: 2 or 3 lowercase letters, optionally followed by "-" and subtags
+     * of lowercase letters and digits (e.g. "en", "gsw", "es-formal", "zh-hans"). Site ids such as "enwiki" are not.
+     */
+    private static boolean isLanguageCode(String text, int start, int end) {
+        int i = start;
+        while (i < end && text.charAt(i) >= 'a' && text.charAt(i) <= 'z') {
+            i++;
+        }
+        if (i - start < 2 || i - start > 3) {
+            return false;
+        }
+        if (i == end) {
+            return true;
+        }
+        if (text.charAt(i) != '-' || i + 1 == end) {
+            return false;
+        }
+        for (i = i + 1; i < end; i++) {
+            char c = text.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Node buildTrie() {
+        Node root = new Node();
+        for (EditType type : EditType.values()) {
+            String key = type.getKey();
+            if (key == null) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                int child = childIndex(key.charAt(i));
+                if (node.children[child] == null) {
+                    node.children[child] = new Node();
+                }
+                node = node.children[child];
+            }
+            node.type = type;
+        }
+        return root;
+    }
+
+    private static int childIndex(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        } else if (c == '-') {
+            return 26;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,150 @@
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Streaming reader of the responses of the action:wbgetentities option of the Wikidata API (props=info|claims).
+ * The statements of every entity are read token by token, only to find out whether any of their values is a target
+ * item and whether there is a P31 statement (see ItemFacts); they are never built in memory.
+ *
+ * Shape of API response:
+ * {
+ *  "entities": {
+ *    "Q20640474": {"pageid": 22387768, "ns": 0, "title": "Q20640474", "lastrevid": 225922733, "modified": "2015-07-03T15:57:04Z",
+ *      "type": "item", "id": "Q20640474",
+ *      "claims": {"P276": [{"mainsnak": {"snaktype": "value", "property": "P276",
+ *                   "datavalue": {"value": {"entity-type": "item", "numeric-id": 10313, "id": "Q10313"}, "type": "wikibase-entityid"}},
+ *                  "type": "statement", "id": "Q20640474$...", "rank": "normal"}], ...}},
+ *    "Q999999999": {"id": "Q999999999", "missing": ""}, ....
+ *  },
+ *  "success": 1
+ * }
+ */
+public final class EntityClaimsReader {
+
+    private EntityClaimsReader() {
+    }
+
+    /**
+     * Reads the entities of a response.
+     * @param in the body of the response (it is not closed).
+     * @param targetItem identifier of the target item (e.g. "Q10313").
+     * @param facts map to which the facts of every entity are added, by identifier (redirected items are added both
+     *              by the requested identifier and by the identifier of the target of the redirect).
+     * @throws IOException if the response could not be read or the API answered with an error.
+     */
+    public static void readEntities(InputStream in, final String targetItem, final Map<String, ItemFacts> facts) throws IOException {
+
+        WikidataJson.readResponse(in, new WikidataJson.MemberReader() {
+            public boolean readMember(String name, JsonToken value, JsonParser parser) throws IOException {
+                if (name.equals("entities") && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String key = parser.getCurrentName();
+                        if (parser.nextToken() == JsonToken.START_OBJECT) {
+                            readEntity(parser, key, targetItem, facts);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    // Reads one entity (the parser is at its START_OBJECT).
+    private static void readEntity(JsonParser parser, String key, String targetItem, Map<String, ItemFacts> facts) throws IOException {
+
+        String id = key;
+        String redirectedFrom = null;
+        long lastRevId = -1;
+        boolean exists = true;
+        boolean connectedToTarget = false;
+        boolean hasP31 = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (name.equals("id") && value == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else if (name.equals("lastrevid") && value == JsonToken.VALUE_NUMBER_INT) {
+                lastRevId = parser.getLongValue();
+            } else if (name.equals("missing")) {
+                exists = false;
+                parser.skipChildren();
+            } else if (name.equals("redirects") && value == JsonToken.START_OBJECT) {
+                redirectedFrom = readRedirectSource(parser);
+            } else if (name.equals("claims") && value == JsonToken.START_OBJECT) {
+                // One array of statements per property.
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String property = parser.getCurrentName();
+                    JsonToken statements = parser.nextToken();
+                    if (property.equals("P31") && statements == JsonToken.START_ARRAY) {
+                        hasP31 = true;
+                    }
+                    if (containsItem(parser, targetItem)) {
+                        connectedToTarget = true;
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        ItemFacts itemFacts = new ItemFacts(id, lastRevId, exists, connectedToTarget, hasP31);
+        facts.put(key, itemFacts);
+        facts.put(id, itemFacts);
+        if (redirectedFrom != null) {
+            facts.put(redirectedFrom, itemFacts);
+        }
+    }
+
+    /**
+     * Reads a value (the parser is at its first token) and tells whether an item value inside it is the target item.
+     * Item values are {"entity-type": "item", "numeric-id": ..., "id": "Qxxx"}; no other "id" of a statement has the
+     * shape of an item identifier (statement identifiers are "Qxxx$GUID").
+     */
+    private static boolean containsItem(JsonParser parser, String targetItem) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+            return false;
+        }
+        boolean found = false;
+        int depth = 1;
+        while (depth > 0) {
+            token = parser.nextToken();
+            if (token == null) {
+                throw new IOException("Unexpected end of the response of the Wikidata API");
+            }
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                depth++;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                depth--;
+            } else if (!found && token == JsonToken.VALUE_STRING && "id".equals(parser.getCurrentName())) {
+                found = targetItem.equals(parser.getText());
+            }
+        }
+        return found;
+    }
+
+    // Reads the "redirects" object (the parser is at its START_OBJECT) and returns the redirected identifier.
+    private static String readRedirectSource(JsonParser parser) throws IOException {
+        String from = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals("from") && value == JsonToken.VALUE_STRING) {
+                from = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return from;
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * @author csarasua
+ * Report sink writing into a file through one buffered writer, which is kept open until the sink is closed.
+ * The time spent writing is recorded in the run metrics (RunMetrics.REPORT_IO).
+ * Objects of this class are not thread-safe.
+ */
+public class FileReportSink implements ReportSink {
+
+    // Size of the buffer of the writer (characters).
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Line separation used to write in the next line in the file.
+    private static final String ls = System.getProperty("line.separator");
+
+    private final File file;
+    private Writer writer;
+    private final RunMetrics metrics = RunMetrics.getShared();
+
+
+    /**
+     * Opens a report file.
+     * @param file the report file.
+     * @param append true to add to the current content of the file, false to overwrite it.
+     * @throws IOException if the file could not be opened.
+     */
+    public FileReportSink(File file, boolean append) throws IOException {
+        this.file = file;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), Charset.defaultCharset()), BUFFER_SIZE);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void write(String text) throws IOException {
+        checkOpen();
+        long started = metrics.start();
+        this.writer.write(text);
+        metrics.stop(RunMetrics.REPORT_IO, started);
+    }
+
+    public void writeLine(String text) throws IOException {
+        checkOpen();
+        long started = metrics.start();
+        this.writer.write(text);
+        this.writer.write(ls);
+        metrics.stop(RunMetrics.REPORT_IO, started);
+    }
+
+    public void newLine() throws IOException {
+        checkOpen();
+        long started = metrics.start();
+        this.writer.write(ls);
+        metrics.stop(RunMetrics.REPORT_IO, started);
+    }
+
+    public void flush() throws IOException {
+        checkOpen();
+        long started = metrics.start();
+        this.writer.flush();
+        metrics.stop(RunMetrics.REPORT_IO, started);
+    }
+
+    public void close() throws IOException {
+        if (this.writer != null) {
+            // The file is closed even if the last flush fails.
+            Writer toClose = this.writer;
+            this.writer = null;
+            toClose.close();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (this.writer == null) {
+            throw new IOException("The report " + this.file + " is closed");
+        }
+    }
+}
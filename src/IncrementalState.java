@@ -0,0 +1,226 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * State kept between incremental runs of an analyzer (see DSSWEAnalyzer.setIncrementalStateFile): for every
+ * participant, the counts of its contributions already read (one per window) and its high-water mark, the newest
+ * contribution read (revision id and timestamp). The next run only asks for the contributions after the mark and adds
+ * them to the kept counts, so a daily run costs as many requests as new contributions, not as the whole campaign.
+ * The state is only valid for the same windows (see DSSWEAnalyzer.windowsId); participants added to the list are
+ * read from the start of the windows.
+ * The state also keeps the length of the report of contributions of every window when it was saved: the next run cuts
+ * the reports to those lengths before adding to them, so the contributions reported by a run that did not save its
+ * state (e.g. it was killed) are not reported twice.
+ * The file is written next to its place and then renamed, so it always holds the state of a complete run.
+ * Objects of this class can be used by several threads at the same time.
+ */
+public class IncrementalState {
+
+    // Version of the format of the file (2: counts in the compact form of ContributionAggregates.writeTo; 3: lengths
+    // of the reports).
+    private static final int VERSION = 3;
+
+    /**
+     * Newest contribution read of a participant.
+     */
+    public static class HighWaterMark {
+        final long revId;
+        final long epochSeconds;
+
+        public HighWaterMark(long revId, long epochSeconds) {
+            this.revId = revId;
+            this.epochSeconds = epochSeconds;
+        }
+
+        public long getRevId() {
+            return revId;
+        }
+
+        public long getEpochSeconds() {
+            return epochSeconds;
+        }
+
+        /**
+         * Gets the newest of this mark and a contribution.
+         */
+        HighWaterMark max(Contribution contribution) {
+            if (contribution.revId > this.revId) {
+                return new HighWaterMark(contribution.revId, Math.max(this.epochSeconds, contribution.epochSeconds));
+            }
+            return this;
+        }
+    }
+
+    // State of one participant.
+    private static class UserState {
+        final ContributionAggregates[] aggregates;
+        final HighWaterMark mark;
+
+        UserState(ContributionAggregates[] aggregates, HighWaterMark mark) {
+            this.aggregates = aggregates;
+            this.mark = mark;
+        }
+    }
+
+    private final File file;
+    private final String windowsId;
+    private final int windows;
+    private final Map<String, UserState> users = new LinkedHashMap<String, UserState>();
+    // Length of the report of contributions of every window (-1: not known).
+    private final long[] reportLengths;
+
+
+    /**
+     * Opens the state of an analyzer. If the file holds a state of other windows (or no state), the state is empty.
+     * @param file the file of the state.
+     * @param windowsId identifier of the windows of the analyzer.
+     * @param windows number of windows of the analyzer.
+     * @throws IOException if the file could not be read.
+     */
+    public IncrementalState(File file, String windowsId, int windows) throws IOException {
+        this.file = file;
+        this.windowsId = windowsId;
+        this.windows = windows;
+        this.reportLengths = new long[windows];
+        Arrays.fill(this.reportLengths, -1);
+        if (file.isFile()) {
+            load();
+        }
+    }
+
+    /**
+     * Whether the state has participants (i.e. a previous run was saved).
+     */
+    public synchronized boolean isEmpty() {
+        return this.users.isEmpty();
+    }
+
+    /**
+     * Gets the high-water mark of a participant.
+     * @param user the participant.
+     * @return the mark, or null if no contribution of the participant has been read yet.
+     */
+    public synchronized HighWaterMark getMark(String user) {
+        UserState state = this.users.get(user);
+        return state != null ? state.mark : null;
+    }
+
+    /**
+     * Gets the length of the report of contributions of a window when the state was saved.
+     * @param window the window.
+     * @return the length, or -1 if it is not known.
+     */
+    public synchronized long getReportLength(int window) {
+        return this.reportLengths[window];
+    }
+
+    /**
+     * Sets the length of the report of contributions of a window, to be saved with the state.
+     * @param window the window.
+     * @param length the length of the report.
+     */
+    public synchronized void setReportLength(int window, long length) {
+        this.reportLengths[window] = length;
+    }
+
+    /**
+     * Adds the counts of the new contributions of a participant to its kept counts.
+     * @param user the participant.
+     * @param newAggregates counts (one per window) of the contributions read after the mark of the participant.
+     * @param newMark the newest contribution read, if all the contributions after the mark were read; null if the
+     *                participant was not completely read (the state is not changed, so that the next run reads the
+     *                same contributions again).
+     * @return new counts (one per window) with all the contributions of the participant.
+     */
+    public synchronized ContributionAggregates[] accumulate(String user, ContributionAggregates[] newAggregates, HighWaterMark newMark) {
+        UserState state = this.users.get(user);
+
+        ContributionAggregates[] total = new ContributionAggregates[this.windows];
+        for (int w = 0; w < this.windows; w++) {
+            total[w] = new ContributionAggregates();
+            if (state != null) {
+                total[w].merge(state.aggregates[w]);
+            }
+            total[w].merge(newAggregates[w]);
+        }
+
+        if (newMark != null) {
+            ContributionAggregates[] kept = new ContributionAggregates[this.windows];
+            for (int w = 0; w < this.windows; w++) {
+                kept[w] = new ContributionAggregates();
+                kept[w].merge(total[w]);
+            }
+            this.users.put(user, new UserState(kept, newMark));
+        }
+        return total;
+    }
+
+    /**
+     * Writes the state in its file.
+     * @throws IOException if the file could not be written.
+     */
+    public synchronized void save() throws IOException {
+        File temporary = new File(this.file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(VERSION);
+            out.writeUTF(this.windowsId);
+            for (long reportLength : this.reportLengths) {
+                out.writeLong(reportLength);
+            }
+            out.writeInt(this.users.size());
+            for (Map.Entry<String, UserState> user : this.users.entrySet()) {
+                out.writeUTF(user.getKey());
+                out.writeLong(user.getValue().mark.revId);
+                out.writeLong(user.getValue().mark.epochSeconds);
+                for (ContributionAggregates aggregates : user.getValue().aggregates) {
+                    aggregates.writeTo(out);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(this.file)) {
+            // Some systems do not rename over an existing file.
+            this.file.delete();
+            if (!temporary.renameTo(this.file)) {
+                throw new IOException("The state could not be written in " + this.file);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        try {
+            if (in.readInt() != VERSION || !in.readUTF().equals(this.windowsId)) {
+                // State of other windows: the run starts from the beginning.
+                return;
+            }
+            for (int w = 0; w < this.windows; w++) {
+                this.reportLengths[w] = in.readLong();
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String user = in.readUTF();
+                HighWaterMark mark = new HighWaterMark(in.readLong(), in.readLong());
+                ContributionAggregates[] aggregates = new ContributionAggregates[this.windows];
+                for (int w = 0; w < this.windows; w++) {
+                    aggregates[w] = ContributionAggregates.readFrom(in);
+                }
+                this.users.put(user, new UserState(aggregates, mark));
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,460 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author csarasua
+ * Range of IP addresses (IPv4 or IPv6) of anonymous participants. A range is given in CIDR notation
+ * ("158.227.136.0/21", "2001:db8::/32"), as one address, or as a prefix of the text of the addresses as the Wikidata
+ * API gives them ("158.227.136.", the way the ranges were given before), which is turned into the ranges of the
+ * addresses starting with it. An "IP@" entry of the list of participants may give several ranges separated by commas.
+ * The ranges are matched on the bits of the addresses (see IpRangeTrie); to ask the API for their contributions, they
+ * are covered by a few text prefixes for ucuserprefix (see prefixQueries), whose contributions are then filtered exactly.
+ * Objects of this class are immutable.
+ */
+public final class IpRange {
+
+    // Network address (the bits after the prefix are 0): 4 bytes for IPv4, 16 bytes for IPv6.
+    private final byte[] address;
+    // Number of bits of the prefix.
+    private final int bits;
+
+
+    /**
+     * Creates a range.
+     * @param address an address of the range (4 or 16 bytes).
+     * @param bits number of bits of the prefix (up to 32 or 128).
+     */
+    public IpRange(byte[] address, int bits) {
+        if ((address.length != 4 && address.length != 16) || bits < 0 || bits > address.length * 8) {
+            throw new IllegalArgumentException("Not an IP range: " + address.length + " bytes /" + bits);
+        }
+        this.address = address.clone();
+        this.bits = bits;
+        for (int i = bits; i < address.length * 8; i++) {
+            this.address[i >> 3] &= ~(0x80 >> (i & 7));
+        }
+    }
+
+    public boolean isIpv6() {
+        return this.address.length == 16;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Gets a bit of the network address (0 is the first bit).
+     */
+    int bit(int index) {
+        return bit(this.address, index);
+    }
+
+    static int bit(byte[] address, int index) {
+        return (address[index >> 3] >> (7 - (index & 7))) & 1;
+    }
+
+    /**
+     * Whether an address is in the range.
+     * @param other the address (4 or 16 bytes, see parseAddress).
+     * @return true if the address has the prefix of the range.
+     */
+    public boolean contains(byte[] other) {
+        if (other == null || other.length != this.address.length) {
+            return false;
+        }
+        for (int i = 0; i < this.bits; i++) {
+            if (bit(other, i) != bit(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof IpRange && ((IpRange) other).bits == this.bits && Arrays.equals(((IpRange) other).address, this.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.address) + this.bits;
+    }
+
+    /**
+     * Gets the range in CIDR notation (IPv6 addresses without compression, as the Wikidata API gives them).
+     */
+    @Override
+    public String toString() {
+        AddressFormat format = AddressFormat.of(isIpv6());
+        StringBuilder text = new StringBuilder();
+        for (int g = 0; g < format.groups; g++) {
+            if (g > 0) {
+                text.append(format.separator);
+            }
+            text.append(format.format(group(this.address, g, format)));
+        }
+        return text.append('/').append(this.bits).toString();
+    }
+
+    /**
+     * Reads the ranges of an "IP@" entry of the list of participants (the part after the "@").
+     * @param ranges ranges separated by commas (CIDR, addresses or text prefixes).
+     * @return the ranges.
+     * @throws IllegalArgumentException if a range is not valid.
+     */
+    public static List<IpRange> parseList(String ranges) {
+        List<IpRange> list = new ArrayList<IpRange>();
+        for (String range : ranges.split(",")) {
+            if (!range.trim().isEmpty()) {
+                list.addAll(parse(range.trim()));
+            }
+        }
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("No IP range in: " + ranges);
+        }
+        return list;
+    }
+
+    /**
+     * Reads a range in CIDR notation, one address, or a text prefix of addresses (which may need several ranges,
+     * e.g. "158.227.13" is 158.227.13.0/24 and 158.227.130.0/24 to 158.227.139.0/24).
+     * @param range the range.
+     * @return the ranges.
+     * @throws IllegalArgumentException if the range is not valid.
+     */
+    public static List<IpRange> parse(String range) {
+        int slash = range.indexOf('/');
+        if (slash >= 0) {
+            byte[] network = parseAddress(range.substring(0, slash));
+            int bits;
+            try {
+                bits = Integer.parseInt(range.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not an IP range: " + range);
+            }
+            if (network == null || bits < 0 || bits > network.length * 8) {
+                throw new IllegalArgumentException("Not an IP range: " + range);
+            }
+            return Collections.singletonList(new IpRange(network, bits));
+        }
+        byte[] single = parseAddress(range);
+        if (single != null) {
+            return Collections.singletonList(new IpRange(single, single.length * 8));
+        }
+        return parseTextPrefix(range);
+    }
+
+    /**
+     * Reads an IP address (e.g. the user of an anonymous contribution).
+     * @param text the text of the address (IPv4 dotted, or IPv6 with or without "::").
+     * @return the address (4 or 16 bytes), or null if the text is not an IP address (e.g. the name of a user).
+     */
+    public static byte[] parseAddress(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        return text.indexOf(':') >= 0 ? parseIpv6(text) : parseIpv4(text);
+    }
+
+    /**
+     * Gets the text prefixes (for the ucuserprefix parameter of the Wikidata API) whose contributions include the ones
+     * of a set of ranges: a range is covered group by group (octets of IPv4, groups of IPv6 addresses), and the
+     * prefixes of the last group are merged into a shorter one as soon as at least half of the addresses it gives are
+     * in the range, or when it replaces more prefixes than there are digits. The contributions of the prefixes have to
+     * be filtered with the ranges.
+     * @param ranges the ranges.
+     * @return the prefixes, sorted, without the ones already covered by a shorter prefix.
+     */
+    public static List<String> prefixQueries(List<IpRange> ranges) {
+        List<String> queries = new ArrayList<String>();
+        for (IpRange range : ranges) {
+            range.addPrefixQueries(queries);
+        }
+        Collections.sort(queries);
+
+        // A prefix comes right before the ones that extend it.
+        List<String> kept = new ArrayList<String>();
+        for (String query : queries) {
+            if (kept.isEmpty() || !query.startsWith(kept.get(kept.size() - 1))) {
+                kept.add(query);
+            }
+        }
+        return kept;
+    }
+
+    private void addPrefixQueries(List<String> queries) {
+        AddressFormat format = AddressFormat.of(isIpv6());
+        int fullGroups = this.bits / format.groupBits;
+        int remainingBits = this.bits % format.groupBits;
+
+        StringBuilder fixed = new StringBuilder();
+        for (int g = 0; g < fullGroups; g++) {
+            fixed.append(format.format(group(this.address, g, format)));
+            if (g < format.groups - 1) {
+                fixed.append(format.separator);
+            }
+        }
+        if (fullGroups == format.groups) {
+            // One address (the prefix also gives the longer addresses starting with it, which are filtered out).
+            queries.add(fixed.toString());
+            return;
+        }
+        if (fullGroups > 0 && remainingBits == 0) {
+            queries.add(fixed.toString());
+            return;
+        }
+
+        // Values of the next group in the range.
+        int low = group(this.address, fullGroups, format);
+        int high = low + (1 << (format.groupBits - remainingBits)) - 1;
+        boolean lastGroup = fullGroups == format.groups - 1;
+        for (int digit = 0; digit < format.base; digit++) {
+            cover(fixed.toString(), format.digit(digit), digit, low, high, lastGroup, format, queries);
+        }
+    }
+
+    /**
+     * Covers the values of a group between low and high with the digits (text) of the group: either the digits as a
+     * prefix of the values starting with them, or the value of the digits and the longer digits.
+     */
+    private static void cover(String fixed, String digits, int value, int low, int high, boolean lastGroup, AddressFormat format, List<String> queries) {
+        int total = 0;
+        int inside = 0;
+        for (int[] interval : startingWith(value, digits, format)) {
+            total += interval[1] - interval[0] + 1;
+            inside += Math.max(0, Math.min(interval[1], high) - Math.max(interval[0], low) + 1);
+        }
+        if (inside == 0) {
+            return;
+        }
+        String exact = lastGroup ? "" : String.valueOf(format.separator);
+        if (total == 1) {
+            queries.add(fixed + digits + exact);
+            return;
+        }
+        if (inside * 2 >= total) {
+            queries.add(fixed + digits);
+            return;
+        }
+        List<String> finer = new ArrayList<String>();
+        if (value >= low && value <= high) {
+            finer.add(fixed + digits + exact);
+        }
+        for (int digit = 0; digit < format.base; digit++) {
+            cover(fixed, digits + format.digit(digit), value * format.base + digit, low, high, lastGroup, format, finer);
+        }
+        // Too many longer prefixes (e.g. the groups of 3 hexadecimal digits of an IPv6 range): the digits are asked instead.
+        if (finer.size() > format.base) {
+            queries.add(fixed + digits);
+        } else {
+            queries.addAll(finer);
+        }
+    }
+
+    /**
+     * Gets the intervals of the values of a group whose text starts with some digits (without leading zeros).
+     */
+    private static List<int[]> startingWith(int value, String digits, AddressFormat format) {
+        List<int[]> intervals = new ArrayList<int[]>();
+        if (digits.length() > 1 && digits.charAt(0) == '0') {
+            return intervals;
+        }
+        if (value == 0) {
+            intervals.add(new int[]{0, 0});
+            return intervals;
+        }
+        long low = value;
+        long high = value;
+        while (low <= format.max) {
+            intervals.add(new int[]{(int) low, (int) Math.min(high, format.max)});
+            low = low * format.base;
+            high = high * format.base + format.base - 1;
+        }
+        return intervals;
+    }
+
+    /**
+     * Reads a text prefix of addresses: complete groups followed by their separator, and the digits of the next group.
+     */
+    private static List<IpRange> parseTextPrefix(String prefix) {
+        AddressFormat format = AddressFormat.of(prefix.indexOf(':') >= 0);
+        String[] pieces = prefix.split(format.separator == '.' ? "\\." : ":", -1);
+        int fullGroups = pieces.length - 1;
+        if (pieces.length == 0 || fullGroups >= format.groups) {
+            throw new IllegalArgumentException("Not an IP prefix: " + prefix);
+        }
+
+        byte[] network = new byte[format.groupBits * format.groups / 8];
+        for (int g = 0; g < fullGroups; g++) {
+            int value = format.parse(pieces[g]);
+            if (value < 0) {
+                throw new IllegalArgumentException("Not an IP prefix: " + prefix);
+            }
+            setGroup(network, g, value, format);
+        }
+
+        List<IpRange> ranges = new ArrayList<IpRange>();
+        String partial = pieces[fullGroups];
+        if (partial.isEmpty()) {
+            ranges.add(new IpRange(network, fullGroups * format.groupBits));
+            return ranges;
+        }
+        int value = format.parse(partial);
+        if (value < 0) {
+            throw new IllegalArgumentException("Not an IP prefix: " + prefix);
+        }
+        // Every interval of values of the group is split into aligned blocks, each of them one range.
+        for (int[] interval : startingWith(value, partial, format)) {
+            int low = interval[0];
+            while (low <= interval[1]) {
+                int size = 1;
+                while (low % (size * 2) == 0 && low + size * 2 - 1 <= interval[1] && size * 2 <= format.max + 1) {
+                    size = size * 2;
+                }
+                byte[] block = network.clone();
+                setGroup(block, fullGroups, low, format);
+                ranges.add(new IpRange(block, fullGroups * format.groupBits + format.groupBits - Integer.numberOfTrailingZeros(size)));
+                low += size;
+            }
+        }
+        return ranges;
+    }
+
+    private static byte[] parseIpv4(String text) {
+        String[] pieces = text.split("\\.", -1);
+        if (pieces.length != 4) {
+            return null;
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            int value = AddressFormat.IPV4.parse(pieces[i]);
+            if (value < 0) {
+                return null;
+            }
+            address[i] = (byte) value;
+        }
+        return address;
+    }
+
+    private static byte[] parseIpv6(String text) {
+        int compression = text.indexOf("::");
+        if (compression >= 0 && text.indexOf("::", compression + 1) >= 0) {
+            return null;
+        }
+        List<Integer> head = ipv6Groups(compression >= 0 ? text.substring(0, compression) : text);
+        List<Integer> tail = ipv6Groups(compression >= 0 ? text.substring(compression + 2) : "");
+        if (head == null || tail == null) {
+            return null;
+        }
+        int missing = 8 - head.size() - tail.size();
+        if (compression >= 0 ? missing < 1 : missing != 0) {
+            return null;
+        }
+        byte[] address = new byte[16];
+        for (int g = 0; g < head.size(); g++) {
+            setGroup(address, g, head.get(g), AddressFormat.IPV6);
+        }
+        for (int g = 0; g < tail.size(); g++) {
+            setGroup(address, 8 - tail.size() + g, tail.get(g), AddressFormat.IPV6);
+        }
+        return address;
+    }
+
+    // Groups of a part of an IPv6 address (none if the part is empty); the last one may be an IPv4 address.
+    private static List<Integer> ipv6Groups(String part) {
+        List<Integer> groups = new ArrayList<Integer>();
+        if (part.isEmpty()) {
+            return groups;
+        }
+        String[] pieces = part.split(":", -1);
+        for (int i = 0; i < pieces.length; i++) {
+            if (i == pieces.length - 1 && pieces[i].indexOf('.') >= 0) {
+                byte[] ipv4 = parseIpv4(pieces[i]);
+                if (ipv4 == null) {
+                    return null;
+                }
+                groups.add(((ipv4[0] & 0xff) << 8) | (ipv4[1] & 0xff));
+                groups.add(((ipv4[2] & 0xff) << 8) | (ipv4[3] & 0xff));
+            } else {
+                int value = AddressFormat.IPV6.parse(pieces[i]);
+                if (value < 0) {
+                    return null;
+                }
+                groups.add(value);
+            }
+        }
+        return groups;
+    }
+
+    private static int group(byte[] address, int group, AddressFormat format) {
+        if (format.groupBits == 8) {
+            return address[group] & 0xff;
+        }
+        return ((address[2 * group] & 0xff) << 8) | (address[2 * group + 1] & 0xff);
+    }
+
+    private static void setGroup(byte[] address, int group, int value, AddressFormat format) {
+        if (format.groupBits == 8) {
+            address[group] = (byte) value;
+        } else {
+            address[2 * group] = (byte) (value >> 8);
+            address[2 * group + 1] = (byte) value;
+        }
+    }
+
+    /**
+     * How the addresses are written: decimal octets separated by dots (IPv4), or hexadecimal groups separated by
+     * colons, in upper case and without leading zeros (IPv6, as the Wikidata API gives them).
+     */
+    private enum AddressFormat {
+        IPV4(4, 8, 10, '.'),
+        IPV6(8, 16, 16, ':');
+
+        final int groups;
+        final int groupBits;
+        final int base;
+        final char separator;
+        final int max;
+
+        AddressFormat(int groups, int groupBits, int base, char separator) {
+            this.groups = groups;
+            this.groupBits = groupBits;
+            this.base = base;
+            this.separator = separator;
+            this.max = (1 << groupBits) - 1;
+        }
+
+        static AddressFormat of(boolean ipv6) {
+            return ipv6 ? IPV6 : IPV4;
+        }
+
+        String digit(int digit) {
+            return String.valueOf(Character.toUpperCase(Character.forDigit(digit, this.base)));
+        }
+
+        String format(int value) {
+            return Integer.toString(value, this.base).toUpperCase();
+        }
+
+        // Reads the text of a group (-1 if it is not valid; IPv4 octets are written without leading zeros).
+        int parse(String text) {
+            int maxDigits = this.base == 10 ? 3 : 4;
+            if (text.isEmpty() || text.length() > maxDigits || (this.base == 10 && text.length() > 1 && text.charAt(0) == '0')) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                int digit = c >= '0' && c <= '9' ? c - '0' : (c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1);
+                if (digit < 0 || digit >= this.base) {
+                    return -1;
+                }
+                value = value * this.base + digit;
+            }
+            return value <= this.max ? value : -1;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * @author csarasua
+ * Binary trie of IP ranges (see IpRange), one for IPv4 and one for IPv6: every range is a path of the bits of its
+ * prefix, so finding the most specific range of an address takes at most one step per bit of the address (32 or 128),
+ * whatever the number of ranges.
+ * Objects of this class are not thread-safe while ranges are added; once filled, they can be read by several threads.
+ */
+public class IpRangeTrie<T> {
+
+    private static final class Node<T> {
+        Node<T> zero;
+        Node<T> one;
+        // Value of the range ending in this node (null if none).
+        T value;
+    }
+
+    private final Node<T> ipv4 = new Node<T>();
+    private final Node<T> ipv6 = new Node<T>();
+    private int size = 0;
+
+
+    /**
+     * Adds a range. A range already in the trie keeps its value.
+     * @param range the range.
+     * @param value the value of the range (not null).
+     * @return true if the range was added.
+     */
+    public boolean put(IpRange range, T value) {
+        Node<T> node = range.isIpv6() ? this.ipv6 : this.ipv4;
+        for (int i = 0; i < range.getBits(); i++) {
+            if (range.bit(i) == 0) {
+                if (node.zero == null) {
+                    node.zero = new Node<T>();
+                }
+                node = node.zero;
+            } else {
+                if (node.one == null) {
+                    node.one = new Node<T>();
+                }
+                node = node.one;
+            }
+        }
+        if (node.value != null) {
+            return false;
+        }
+        node.value = value;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Finds the most specific range of an address.
+     * @param address the address (4 or 16 bytes, see IpRange.parseAddress); null is not in any range.
+     * @return the value of the range with the longest prefix containing the address, or null if there is none.
+     */
+    public T match(byte[] address) {
+        if (address == null) {
+            return null;
+        }
+        Node<T> node = address.length == 16 ? this.ipv6 : this.ipv4;
+        T longest = node.value;
+        for (int i = 0; i < address.length * 8; i++) {
+            node = IpRange.bit(address, i) == 0 ? node.zero : node.one;
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                longest = node.value;
+            }
+        }
+        return longest;
+    }
+
+    public int size() {
+        return size;
+    }
+}
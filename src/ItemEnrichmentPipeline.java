@@ -0,0 +1,285 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author csarasua
+ * Pipeline to look up the edited items while the contributions are still being read, in three stages connected by
+ * bounded queues:
+ * 1. the readers of contributions give every item the first time it is seen (offer), waiting when the queue of items
+ *    to look up is full, so the readers never get too far ahead of the lookups;
+ * 2. a fixed number of lookup workers take the items in batches of up to ItemLooker.BATCH_SIZE and look them up
+ *    (see ItemLooker.lookUpItems, with the cache of facts, if any), waiting when the queue of results is full;
+ * 3. one aggregation worker keeps, from every result, only which items are connected to the target item.
+ * The memory used does not grow with the facts of the items: the queues are bounded, and the items seen and the
+ * connected items are kept as numbers (see ItemIdSet).
+ * A batch that cannot be looked up (also after asking again, see RequestScheduler) does not stop the pipeline: its
+ * items are kept apart (see getFailedItems) and the other batches are looked up anyway.
+ * Objects of this class can be used by several threads at the same time (offer); start and finish are called once.
+ */
+public class ItemEnrichmentPipeline {
+
+    // Time a lookup worker waits for more items to fill a batch, while the items are still being read (ms).
+    private static final long BATCH_FILL_MILLIS = 200;
+    // Time the workers wait for something to do before checking whether the pipeline is over (ms).
+    private static final long POLL_MILLIS = 100;
+
+    private final String targetItem;
+    private final int concurrentLookups;
+    private final ItemFactsCache cache;
+
+    // Items seen so far (each of them is looked up once).
+    private final ItemIdSet seen = new ItemIdSet();
+    // Stage 1 -> 2: items to look up.
+    private final BlockingQueue<Integer> pending;
+    // Stage 2 -> 3: facts of the looked up batches.
+    private final BlockingQueue<Map<String, ItemFacts>> results;
+
+    // Stage 3: items connected to the target item.
+    private final ItemIdSet connected = new ItemIdSet();
+
+    private ExecutorService lookupWorkers;
+    private ExecutorService aggregationWorker;
+    private Future<?> aggregation;
+    // Lookup workers still running (if all of them stopped before finish, the items given can no longer be looked up).
+    private final AtomicInteger runningLookups = new AtomicInteger();
+    // Whether no more items are given (the lookup workers finish once the queue is empty).
+    private volatile boolean closed = false;
+    // Whether all the lookup workers finished (the aggregation worker finishes once the queue of results is empty).
+    private volatile boolean lookupsFinished = false;
+    // First failure of a lookup (the other batches are looked up anyway), and the items that could not be looked up.
+    private IOException failure = null;
+    private final ItemIdSet failed = new ItemIdSet();
+
+
+    /**
+     * Creates a pipeline.
+     * @param targetItem item looked for in the statements (e.g. ItemLooker.DSS_ITEM).
+     * @param concurrentLookups number of lookup workers (requests sent at the same time).
+     * @param cache cache of facts for the same target item (null: no cache).
+     * @param queueCapacity maximum number of items waiting to be looked up.
+     */
+    public ItemEnrichmentPipeline(String targetItem, int concurrentLookups, ItemFactsCache cache, int queueCapacity) {
+        this.targetItem = targetItem;
+        this.concurrentLookups = Math.max(1, concurrentLookups);
+        this.cache = cache;
+        this.pending = new ArrayBlockingQueue<Integer>(Math.max(ItemLooker.BATCH_SIZE, queueCapacity));
+        this.results = new ArrayBlockingQueue<Map<String, ItemFacts>>(2 * this.concurrentLookups);
+    }
+
+    /**
+     * Starts the lookup and aggregation workers.
+     */
+    public void start() {
+        this.runningLookups.set(this.concurrentLookups);
+        this.lookupWorkers = Executors.newFixedThreadPool(this.concurrentLookups);
+        for (int i = 0; i < this.concurrentLookups; i++) {
+            this.lookupWorkers.submit(new Runnable() {
+                public void run() {
+                    lookUpPending();
+                }
+            });
+        }
+        this.lookupWorkers.shutdown();
+
+        this.aggregationWorker = Executors.newSingleThreadExecutor();
+        this.aggregation = this.aggregationWorker.submit(new Runnable() {
+            public void run() {
+                aggregateResults();
+            }
+        });
+        this.aggregationWorker.shutdown();
+    }
+
+    /**
+     * Gives an edited item to the pipeline; it is looked up if it was not given before. Waits while the queue of items
+     * to look up is full.
+     * @param itemId number of the item (see ItemIdSet.parse).
+     * @throws InterruptedIOException if the thread was interrupted while waiting.
+     * @throws IOException if the lookup workers stopped (the queue would never have room again).
+     */
+    public void offer(int itemId) throws IOException {
+        synchronized (this.seen) {
+            if (!this.seen.add(itemId)) {
+                return;
+            }
+        }
+        try {
+            while (!this.pending.offer(itemId, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (this.runningLookups.get() == 0) {
+                    synchronized (this) {
+                        throw new IOException("The lookups of items stopped", this.failure);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while giving the item Q" + itemId + " to look up");
+        }
+    }
+
+    /**
+     * Gives all the items of a set to the pipeline (see offer).
+     */
+    public void offerAll(ItemIdSet itemIds) throws IOException {
+        for (int itemId : itemIds.toSortedArray()) {
+            offer(itemId);
+        }
+    }
+
+    /**
+     * Waits until all the given items have been looked up and stops the workers.
+     * @return the items connected to the target item, among the ones that could be looked up (see getFailedItems).
+     * @throws IOException if the looked up items could not be counted.
+     */
+    public ItemIdSet finish() throws IOException {
+        this.closed = true;
+        try {
+            while (!this.lookupWorkers.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                // Waits for the lookups.
+            }
+            this.lookupsFinished = true;
+            this.aggregation.get();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while looking up items");
+        } catch (ExecutionException e) {
+            throw new IOException("The looked up items could not be counted", e.getCause());
+        }
+        // Items left by lookup workers that stopped.
+        List<Integer> left = new ArrayList<Integer>();
+        this.pending.drainTo(left);
+        if (!left.isEmpty()) {
+            fail(new IOException("The lookups of items stopped"), left);
+        }
+        return this.connected;
+    }
+
+    /**
+     * Gets the items that could not be looked up (once finish returned).
+     * @return the items whose batch failed.
+     */
+    public synchronized ItemIdSet getFailedItems() {
+        return this.failed;
+    }
+
+    /**
+     * Gets the first failure of a lookup (once finish returned).
+     * @return the failure, or null if all the items were looked up.
+     */
+    public synchronized IOException getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Stops the workers without waiting for the items still to be looked up (e.g. when the analysis failed).
+     */
+    public void cancel() {
+        this.closed = true;
+        if (this.lookupWorkers != null) {
+            this.lookupWorkers.shutdownNow();
+        }
+        if (this.aggregationWorker != null) {
+            this.aggregationWorker.shutdownNow();
+        }
+    }
+
+    // Stage 2: takes batches of items and looks them up, until the pipeline is closed and no item is left.
+    private void lookUpPending() {
+        try {
+            List<String> batch = new ArrayList<String>(ItemLooker.BATCH_SIZE);
+            List<Integer> taken = new ArrayList<Integer>(ItemLooker.BATCH_SIZE);
+            while (true) {
+                Integer first = this.pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (this.closed && this.pending.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                taken.add(first);
+                this.pending.drainTo(taken, ItemLooker.BATCH_SIZE - taken.size());
+
+                // While the items are being read, waits a little for a full batch (one request instead of several).
+                long fillUntil = System.currentTimeMillis() + BATCH_FILL_MILLIS;
+                while (taken.size() < ItemLooker.BATCH_SIZE && !this.closed) {
+                    long wait = fillUntil - System.currentTimeMillis();
+                    Integer next = wait > 0 ? this.pending.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    taken.add(next);
+                    this.pending.drainTo(taken, ItemLooker.BATCH_SIZE - taken.size());
+                }
+
+                for (Integer itemId : taken) {
+                    batch.add("Q" + itemId);
+                }
+                try {
+                    this.results.put(ItemLooker.lookUpItems(batch, this.targetItem, 1, this.cache));
+                } catch (IOException e) {
+                    fail(e, taken);
+                } catch (RuntimeException e) {
+                    // The worker goes on, so that the readers never wait for a full queue forever.
+                    fail(new IOException("Items could not be looked up", e), taken);
+                } catch (Error e) {
+                    fail(new IOException("Items could not be looked up", e), taken);
+                    throw e;
+                }
+                batch.clear();
+                taken.clear();
+            }
+        } catch (InterruptedException e) {
+            // Cancelled.
+            Thread.currentThread().interrupt();
+        } finally {
+            this.runningLookups.decrementAndGet();
+        }
+    }
+
+    // Records the failure of the lookup of some items.
+    private synchronized void fail(IOException e, List<Integer> itemIds) {
+        if (this.failure == null) {
+            this.failure = e;
+        }
+        for (Integer itemId : itemIds) {
+            this.failed.add(itemId);
+        }
+    }
+
+    // Stage 3: keeps which items are connected to the target item, until all the lookups finished.
+    private void aggregateResults() {
+        try {
+            while (true) {
+                Map<String, ItemFacts> facts = this.results.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (facts == null) {
+                    if (this.lookupsFinished && this.results.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                // The facts are kept by the identifier that was asked (not the one of the item it redirects to).
+                for (Map.Entry<String, ItemFacts> itemFacts : facts.entrySet()) {
+                    int itemId = ItemIdSet.parse(itemFacts.getKey());
+                    if (itemId > 0 && itemFacts.getValue().isConnectedToTarget()) {
+                        this.connected.add(itemId);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Cancelled.
+            Thread.currentThread().interrupt();
+        }
+    }
+}
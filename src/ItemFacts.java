@@ -0,0 +1,50 @@
+/**
+ * @author csarasua
+ * Facts about one Wikidata item, read from its statements (claims): whether the item exists, whether any of its
+ * statements points to a target item (e.g. Q10313, the DSS) and whether it has an "instance of" (P31) statement.
+ * The facts are valid for the revision lastRevId of the item (-1 if it is not known).
+ * Objects of this class are immutable.
+ */
+public class ItemFacts {
+
+    private final String itemId;
+    private final boolean exists;
+    private final boolean connectedToTarget;
+    private final boolean hasP31;
+    private final long lastRevId;
+
+
+    public ItemFacts(String itemId, long lastRevId, boolean exists, boolean connectedToTarget, boolean hasP31) {
+        this.itemId = itemId;
+        this.lastRevId = lastRevId;
+        this.exists = exists;
+        this.connectedToTarget = connectedToTarget;
+        this.hasP31 = hasP31;
+    }
+
+    public String getItemId() {
+        return itemId;
+    }
+
+    public long getLastRevId() {
+        return lastRevId;
+    }
+
+    /**
+     * Whether the item exists (false for deleted or never created items).
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    /**
+     * Whether a statement of the item (main value, qualifier or reference) has the target item as value.
+     */
+    public boolean isConnectedToTarget() {
+        return connectedToTarget;
+    }
+
+    public boolean hasP31() {
+        return hasP31;
+    }
+}
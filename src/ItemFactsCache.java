@@ -0,0 +1,169 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Cache of the facts of items (see ItemFacts), kept between runs in a file, so that items edited by many participants
+ * or analyzed in several runs are looked up in the API only once.
+ * The facts of an item are valid while the item does not change: an entry is only used for the same last revision of
+ * the item (see ItemLooker.lookUpItems, which asks the API for the last revisions of the batches with cached items).
+ * The cache keeps at most maxEntries items, forgetting the least recently used ones. The facts depend on the target
+ * item, so a file written for another target item is not used.
+ *
+ * Format of the file: [int version][UTF target item][int number of entries] and, for every entry from the least to
+ * the most recently used, [UTF item][long last revision][byte flags: 1 exists, 2 connected to target, 4 has P31].
+ * The cache can be used by several threads at the same time.
+ */
+public class ItemFactsCache {
+
+    private static final int VERSION = 1;
+
+    private static final int EXISTS = 1;
+    private static final int CONNECTED_TO_TARGET = 2;
+    private static final int HAS_P31 = 4;
+
+    private final File file;
+    private final String targetItem;
+    private final int maxEntries;
+
+    // Entries in access order (least recently used first).
+    private final LinkedHashMap<String, ItemFacts> entries;
+
+
+    /**
+     * Opens a cache, loading the entries of the file if it exists and was written for the same target item.
+     * @param file the file of the cache.
+     * @param targetItem the target item of the facts (e.g. ItemLooker.DSS_ITEM).
+     * @param maxEntries maximum number of items kept.
+     * @throws IOException if the file exists but could not be read.
+     */
+    public ItemFactsCache(File file, String targetItem, final int maxEntries) throws IOException {
+        this.file = file;
+        this.targetItem = targetItem;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, ItemFacts>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ItemFacts> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (file.isFile()) {
+            load();
+        }
+    }
+
+    public String getTargetItem() {
+        return targetItem;
+    }
+
+    /**
+     * Gets the facts of an item, if they are in the cache for the given revision.
+     * @param itemId identifier of the item.
+     * @param lastRevId current last revision of the item (-1 if the item does not exist).
+     * @return the facts, or null if the item is not in the cache or changed since it was cached.
+     */
+    public synchronized ItemFacts get(String itemId, long lastRevId) {
+        ItemFacts facts = this.entries.get(itemId);
+        if (facts == null) {
+            return null;
+        }
+        if (facts.getLastRevId() != lastRevId) {
+            // The item changed: the entry is no longer valid.
+            this.entries.remove(itemId);
+            return null;
+        }
+        return facts;
+    }
+
+    /**
+     * Whether the cache has facts of an item, for any revision.
+     * @param itemId identifier of the item.
+     */
+    public synchronized boolean contains(String itemId) {
+        return this.entries.containsKey(itemId);
+    }
+
+    /**
+     * Adds (or replaces) the facts of an item.
+     * @param itemId identifier of the item (the requested one, which may be a redirect to facts.getItemId()).
+     * @param facts the facts, with the revision they are valid for.
+     */
+    public synchronized void put(String itemId, ItemFacts facts) {
+        this.entries.put(itemId, facts);
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Writes the cache into its file. The file is written in a temporary file and then moved, so it is never seen half written.
+     * @throws IOException if the file could not be written.
+     */
+    public void save() throws IOException {
+
+        List<Map.Entry<String, ItemFacts>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<Map.Entry<String, ItemFacts>>(this.entries.entrySet());
+        }
+
+        File parent = this.file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("The cache directory " + parent + " could not be created");
+        }
+        File temporary = File.createTempFile(this.file.getName(), ".tmp", parent);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            try {
+                out.writeInt(VERSION);
+                out.writeUTF(this.targetItem);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, ItemFacts> entry : snapshot) {
+                    ItemFacts facts = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(facts.getLastRevId());
+                    out.writeByte((facts.exists() ? EXISTS : 0) | (facts.isConnectedToTarget() ? CONNECTED_TO_TARGET : 0) | (facts.hasP31() ? HAS_P31 : 0));
+                }
+            } finally {
+                out.close();
+            }
+            java.nio.file.Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    // Loads the entries of the file (none if it was written by another version or for another target item).
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        try {
+            if (in.readInt() != VERSION || !in.readUTF().equals(this.targetItem)) {
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String itemId = in.readUTF();
+                long lastRevId = in.readLong();
+                int flags = in.readByte();
+                this.entries.put(itemId, new ItemFacts(itemId, lastRevId, (flags & EXISTS) != 0, (flags & CONNECTED_TO_TARGET) != 0, (flags & HAS_P31) != 0));
+            }
+        } catch (EOFException e) {
+            // Truncated file: the entries read so far are kept.
+            System.err.println("The item cache " + this.file + " is truncated");
+        } finally {
+            in.close();
+        }
+    }
+}
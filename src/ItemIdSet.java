@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author csarasua
+ * Set of Wikidata items (Qxxx) kept by their number: an open-addressing table of ints (linear probing), without an
+ * object per item. The items are listed in the order of their number (see toSortedArray).
+ * Objects of this class are not thread-safe.
+ */
+public class ItemIdSet {
+
+    // Value of the empty slots (no item has number 0).
+    private static final int EMPTY = 0;
+    // Maximum fraction of used slots before the table is made larger.
+    private static final float MAX_LOAD = 0.6f;
+
+    private int[] slots;
+    private int size = 0;
+    // Number of used slots that makes the table larger.
+    private int resizeAt;
+
+
+    public ItemIdSet() {
+        this(16);
+    }
+
+    /**
+     * Creates a set.
+     * @param expectedSize number of items the set can keep without making its table larger.
+     */
+    public ItemIdSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity = capacity * 2;
+        }
+        this.slots = new int[capacity];
+        this.resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+    /**
+     * Gets the number of an item from its identifier.
+     * @param title identifier of the item (title of its page, e.g. "Q20640474").
+     * @return the number of the item (e.g. 20640474), or -1 if the title is not the identifier of an item.
+     */
+    public static int parse(String title) {
+        int length = title.length();
+        if (length < 2 || length > 11 || title.charAt(0) != 'Q' || title.charAt(1) == '0') {
+            return -1;
+        }
+        long id = 0;
+        for (int i = 1; i < length; i++) {
+            char c = title.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id <= Integer.MAX_VALUE ? (int) id : -1;
+    }
+
+    /**
+     * Adds an item.
+     * @param id number of the item (greater than 0).
+     * @return true if the item was not in the set.
+     */
+    public boolean add(int id) {
+        if (id <= EMPTY) {
+            throw new IllegalArgumentException("Not the number of an item: " + id);
+        }
+        int mask = this.slots.length - 1;
+        int slot = hash(id) & mask;
+        while (this.slots[slot] != EMPTY) {
+            if (this.slots[slot] == id) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.slots[slot] = id;
+        this.size++;
+        if (this.size > this.resizeAt) {
+            resize(this.slots.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Whether an item is in the set.
+     * @param id number of the item.
+     */
+    public boolean contains(int id) {
+        if (id <= EMPTY) {
+            return false;
+        }
+        int mask = this.slots.length - 1;
+        int slot = hash(id) & mask;
+        while (this.slots[slot] != EMPTY) {
+            if (this.slots[slot] == id) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Whether an item is in the set.
+     * @param title identifier of the item (Qxxx).
+     */
+    public boolean contains(String title) {
+        return contains(parse(title));
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Adds the items of another set (union).
+     * @param other the set whose items are added.
+     */
+    public void addAll(ItemIdSet other) {
+        if (this.size + other.size > this.resizeAt) {
+            int capacity = this.slots.length;
+            while (capacity * MAX_LOAD < this.size + other.size) {
+                capacity = capacity * 2;
+            }
+            resize(capacity);
+        }
+        for (int id : other.slots) {
+            if (id != EMPTY) {
+                add(id);
+            }
+        }
+    }
+
+    /**
+     * Keeps only the items that are also in another set (intersection).
+     * @param other the set whose items are kept.
+     */
+    public void retainAll(ItemIdSet other) {
+        int[] kept = new int[Math.min(this.size, other.size)];
+        int count = 0;
+        for (int id : this.slots) {
+            if (id != EMPTY && other.contains(id)) {
+                kept[count++] = id;
+            }
+        }
+        Arrays.fill(this.slots, EMPTY);
+        this.size = 0;
+        for (int i = 0; i < count; i++) {
+            add(kept[i]);
+        }
+    }
+
+    /**
+     * Gets the numbers of the items of the set, in increasing order.
+     * @return a new array with the numbers.
+     */
+    public int[] toSortedArray() {
+        int[] ids = new int[this.size];
+        int count = 0;
+        for (int id : this.slots) {
+            if (id != EMPTY) {
+                ids[count++] = id;
+            }
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Gets the identifiers of the items of the set (Qxxx), in the order of their numbers.
+     * @return a new list with the identifiers.
+     */
+    public List<String> toItemIds() {
+        int[] ids = toSortedArray();
+        List<String> itemIds = new ArrayList<String>(ids.length);
+        for (int id : ids) {
+            itemIds.add("Q" + id);
+        }
+        return itemIds;
+    }
+
+    private void resize(int capacity) {
+        int[] old = this.slots;
+        this.slots = new int[capacity];
+        this.resizeAt = (int) (capacity * MAX_LOAD);
+        this.size = 0;
+        for (int id : old) {
+            if (id != EMPTY) {
+                add(id);
+            }
+        }
+    }
+
+    // Spreads the numbers of consecutive items over the table (Fibonacci hashing).
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,24 +1,46 @@
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.ModelFactory;
-import org.apache.http.Header;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.apache.jena.riot.Lang;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
  * @author csarasua
+ * Class to look up Wikidata items, one by one (Linked Data) or many at once (see lookUpItems), and the sizes of their
+ * revisions (see lookUpRevisionSizes).
  */
 public class ItemLooker {
 
+    // Item of the DSS (Donostia / San Sebastian).
+    public static final String DSS_ITEM = "Q10313";
+
+    // Maximum number of items asked in one wbgetentities request (limit of the Wikidata API).
+    public static final int BATCH_SIZE = 50;
+
+    // Triples looked for in the RDF of an item: any predicate with the DSS as object (in the full flavor of
+    // Special:EntityData, and in the Linked Data document of the item).
+    private static final RdfTripleScanner CONNECTED_TO_DSS = new RdfTripleScanner("https://www.wikidata.org/wiki/" + DSS_ITEM, null);
+    private static final RdfTripleScanner HAS_DSS_OBJECT = new RdfTripleScanner("https://www.wikidata.org/entity/" + DSS_ITEM, null);
+
 
     String itemWikidataID;
 
@@ -37,105 +59,384 @@ public class ItemLooker {
 
     public boolean isItemConnectedToDSS()
     {
+        //HttpGet getFeedRecentChanges = new HttpGet("https://www.wikidata.org/entity/"+itemWikidataID);
+        return scanItemRDF("https://www.wikidata.org/wiki/Special:EntityData/"+itemWikidataID+".rdf?flavor=full", CONNECTED_TO_DSS);
+    }
 
-        boolean resultMethod=false;
-        //Look the item via Linked Data dereferencable
-        HttpClient client = new DefaultHttpClient();
+    /**
+     * Whether the Linked Data document of the item has a statement with the DSS as object, as
+     * ItemFacts.isConnectedToTarget for the target DSS_ITEM (not whether it has a P31 statement, see ItemFacts.hasP31).
+     */
+    public boolean isConnectedToTarget()
+    {
+        return scanItemRDF("https://www.wikidata.org/entity/"+itemWikidataID, HAS_DSS_OBJECT);
+    }
 
+    /**
+     * Looks for a triple in the RDF of the item, read as a stream up to the first matching triple.
+     * @param url URL of the RDF/XML document of the item.
+     * @param scanner the triple looked for.
+     * @return true if the RDF of the item has the triple (false also if it could not be read).
+     */
+    private boolean scanItemRDF(String url, RdfTripleScanner scanner)
+    {
 
-        //HttpGet getFeedRecentChanges = new HttpGet("https://www.wikidata.org/entity/"+itemWikidataID);
-        HttpGet getItemRDF = new HttpGet("https://www.wikidata.org/wiki/Special:EntityData/"+itemWikidataID+".rdf?flavor=full");
+        boolean resultMethod = false;
+        //Look the item via Linked Data dereferencable (through the shared request scheduler and HTTP transport)
+        RequestScheduler scheduler = RequestScheduler.getShared();
+        WikidataTransport transport = scheduler.getTransport();
+
+        HttpGet getItemRDF = new HttpGet(url);
 
         getItemRDF.setHeader("Accept", "application/rdf+xml");
 
         HttpResponse response = null;
+        long started = RunMetrics.getShared().start();
 
-            try {
-                response = client.execute(getItemRDF);
-
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == 200) {
-                Header header = response.getEntity().getContentType();
+        try {
+            response = scheduler.execute(getItemRDF);
+
+            InputStream rdfItemData = response.getEntity().getContent();
+            resultMethod = scanner.matches(rdfItemData, Lang.RDFXML);
+            if (resultMethod) {
+                // A triple matched: the rest of the document is not downloaded (the connection is closed instead of
+                // being given back to the pool).
+                getItemRDF.abort();
+                response = null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            // The RDF of the item is not valid.
+            e.printStackTrace();
+        } finally {
+            transport.release(response);
+            RunMetrics.getShared().stop(RunMetrics.RDF_SCAN, started);
+        }
+        return resultMethod;
+    }
 
-                InputStream rdfItemData = response.getEntity().getContent();
-                System.out.println(response.getEntity().getContent().toString());
-                Model responseModel = ModelFactory.createDefaultModel();
-                responseModel.read(rdfItemData, "RDF/XML");
 
-                String queryString = "SELECT ?item WHERE {?item ?p <https://www.wikidata.org/wiki/Q10313>}";
 
-                QueryExecution qe = QueryExecutionFactory.create(queryString, responseModel);
-                ResultSet results = qe.execSelect();
-                QuerySolution qs = null;
+    /**
+     * Looks up many items at once with the action:wbgetentities option of the Wikidata API (props=info|claims).
+     * The items are asked in requests of up to BATCH_SIZE items, several requests at the same time.
+     * @param itemIds identifiers of the items (Qxxx); repeated identifiers are asked only once.
+     * @param targetItem item looked for in the statements (e.g. DSS_ITEM).
+     * @param concurrentRequests number of requests sent at the same time.
+     * @return the facts of every item, by identifier (items not given by the API are not in the map).
+     * @throws IOException if some request failed (also after asking again, see RequestScheduler).
+     */
+    public static Map<String, ItemFacts> lookUpItems(Collection<String> itemIds, String targetItem, int concurrentRequests) throws IOException {
+        return lookUpItems(itemIds, targetItem, concurrentRequests, null);
+    }
 
-               if(results.hasNext()){
-                    resultMethod=true;
+    /**
+     * Looks up many items at once, taking from a cache the items that did not change since they were cached.
+     * The items are asked in batches of BATCH_SIZE items, several batches at the same time. A batch without any item in
+     * the cache is asked with wbgetentities directly, and its items are cached for the last revision given with their
+     * facts. For a batch with some cached item, the last revision of its items is asked first (action:query /
+     * prop:info, much smaller than the statements), and only the items that are not in the cache for that revision are
+     * asked with wbgetentities. So a repeated run still sends one request per batch of BATCH_SIZE items: the cache saves
+     * the statements, not the requests.
+     * @param itemIds identifiers of the items (Qxxx); repeated identifiers are asked only once.
+     * @param targetItem item looked for in the statements (e.g. DSS_ITEM).
+     * @param concurrentRequests number of requests sent at the same time.
+     * @param cache cache of facts for the same target item (null: no cache).
+     * @return the facts of every item, by identifier (items not given by the API are not in the map).
+     * @throws IOException if some request failed (also after asking again, see RequestScheduler).
+     */
+    public static Map<String, ItemFacts> lookUpItems(Collection<String> itemIds, final String targetItem, int concurrentRequests, final ItemFactsCache cache) throws IOException {
+
+        List<String> distinctIds = new ArrayList<String>(new LinkedHashSet<String>(itemIds));
+
+        if (cache != null && !cache.getTargetItem().equals(targetItem)) {
+            throw new IllegalArgumentException("The cache is for the target item " + cache.getTargetItem() + ", not " + targetItem);
+        }
 
-                }
+        return inBatches(distinctIds, concurrentRequests, new BatchLookup<ItemFacts>() {
+            public Map<String, ItemFacts> lookUp(List<String> batch) throws IOException {
+                return cache == null ? lookUpBatch(batch, targetItem) : lookUpBatch(batch, targetItem, cache);
+            }
+        });
+    }
 
+    /**
+     * Looks up one batch of items (at most BATCH_SIZE), taking from a cache the items that did not change since they
+     * were cached (see lookUpItems).
+     */
+    private static Map<String, ItemFacts> lookUpBatch(List<String> batch, String targetItem, ItemFactsCache cache) throws IOException {
+
+        boolean someCached = false;
+        for (String id : batch) {
+            if (cache.contains(id)) {
+                someCached = true;
+                break;
+            }
+        }
 
+        if (!someCached) {
+            Map<String, ItemFacts> lookedUp = lookUpBatch(batch, targetItem);
+            for (String id : batch) {
+                ItemFacts itemFacts = lookedUp.get(id);
+                // A redirected item has the last revision of the target of the redirect, not the one prop:info gives
+                // for the requested item: it is cached when its batch asks for the last revisions.
+                if (itemFacts != null && itemFacts.getItemId().equals(id)) {
+                    cache.put(id, itemFacts);
+                }
             }
+            return lookedUp;
+        }
+
+        Map<String, ItemFacts> facts = new HashMap<String, ItemFacts>();
+        Map<String, Long> lastRevisions = lookUpLastRevisions(batch);
+        List<String> missingIds = new ArrayList<String>();
+        for (String id : batch) {
+            Long lastRevId = lastRevisions.get(id);
+            ItemFacts cached = lastRevId == null ? null : cache.get(id, lastRevId);
+            if (cached != null) {
+                facts.put(id, cached);
+            } else {
+                missingIds.add(id);
             }
-            catch (IOException e) {
-                e.printStackTrace();
+        }
+        if (missingIds.isEmpty()) {
+            return facts;
+        }
+
+        Map<String, ItemFacts> lookedUp = lookUpBatch(missingIds, targetItem);
+        facts.putAll(lookedUp);
+        for (String id : missingIds) {
+            ItemFacts itemFacts = lookedUp.get(id);
+            Long lastRevId = lastRevisions.get(id);
+            if (itemFacts == null || lastRevId == null) {
+                continue;
             }
-            catch (Throwable t)
-            {t.printStackTrace();}
-        finally {
-                return resultMethod;
+            if (itemFacts.getLastRevId() != lastRevId) {
+                // Redirected item (or an item edited in between): cached for the revision that is checked next time.
+                itemFacts = new ItemFacts(itemFacts.getItemId(), lastRevId, itemFacts.exists(), itemFacts.isConnectedToTarget(), itemFacts.hasP31());
             }
+            cache.put(id, itemFacts);
+        }
+        return facts;
+    }
 
+    /**
+     * Gets the size of many revisions at once: action:query / prop:revisions, BATCH_SIZE revisions per request, several
+     * requests at the same time. A revision never changes, so every batch is kept in the cache of responses, if any; in
+     * offline mode the batches that are not in the cache are not asked.
+     * A batch whose request failed (also after asking again, see RequestScheduler) does not stop the other batches: its
+     * revisions are left out of the result.
+     * @param revIds ids of the revisions; repeated ids are asked only once.
+     * @param concurrentRequests number of requests sent at the same time.
+     * @param cache cache of responses (null: no cache).
+     * @return the size of every revision (bytes of the page after the revision), by revision id (revisions not given
+     * by the API, not in the cache in offline mode, or of a failed batch, are not in the map).
+     * @throws InterruptedIOException if the thread was interrupted while asking the sizes.
+     */
+    public static Map<Long, Integer> lookUpRevisionSizes(Collection<Long> revIds, int concurrentRequests, final ResponseCache cache) throws IOException {
+
+        // In order, so that a run asking for the same revisions asks for them in the same batches (found in the cache).
+        List<String> distinctIds = new ArrayList<String>();
+        for (Long revId : new TreeSet<Long>(revIds)) {
+            distinctIds.add(revId.toString());
+        }
 
+        Map<String, Integer> sizes = inBatches(distinctIds, concurrentRequests, new BatchLookup<Integer>() {
+            public Map<String, Integer> lookUp(List<String> batch) throws IOException {
+                try {
+                    return lookUpRevisionSizes(batch, cache);
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    // The edits of the revisions of the batch are counted without size.
+                    e.printStackTrace();
+                    return new HashMap<String, Integer>();
+                }
+            }
+        });
 
+        Map<Long, Integer> sizesByRevId = new HashMap<Long, Integer>();
+        for (Map.Entry<String, Integer> size : sizes.entrySet()) {
+            sizesByRevId.put(Long.valueOf(size.getKey()), size.getValue());
+        }
+        return sizesByRevId;
     }
 
-    public boolean hasP31Statement()
-    {
-
-        boolean resultMethod = false;
-        //Look the item via Linked Data dereferencable
-        HttpClient client = new DefaultHttpClient();
+    // Lookup of one batch of items (at most BATCH_SIZE).
+    private interface BatchLookup<T> {
+        Map<String, T> lookUp(List<String> batch) throws IOException;
+    }
 
-        HttpGet getFeedRecentChanges = new HttpGet("https://www.wikidata.org/entity/"+itemWikidataID);
+    /**
+     * Looks up items in batches of up to BATCH_SIZE items, several batches at the same time.
+     * @return the results of all the batches.
+     */
+    private static <T> Map<String, T> inBatches(List<String> ids, int concurrentRequests, final BatchLookup<T> lookup) throws IOException {
 
-        getFeedRecentChanges.setHeader("Accept", "application/rdf+xml");
+        // Splits the items in batches.
+        List<List<String>> batches = new ArrayList<List<String>>();
+        for (int i = 0; i < ids.size(); i = i + BATCH_SIZE) {
+            batches.add(ids.subList(i, Math.min(i + BATCH_SIZE, ids.size())));
+        }
 
-        HttpResponse response = null;
+        Map<String, T> results = new HashMap<String, T>();
+        if (batches.isEmpty()) {
+            return results;
+        }
+        if (batches.size() == 1) {
+            // One request: no need for other threads (e.g. the batches of ItemEnrichmentPipeline).
+            return lookup.lookUp(batches.get(0));
+        }
 
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrentRequests, batches.size())));
         try {
-            response = client.execute(getFeedRecentChanges);
+            List<Future<Map<String, T>>> batchResults = new ArrayList<Future<Map<String, T>>>();
+            for (final List<String> batch : batches) {
+                batchResults.add(executor.submit(new Callable<Map<String, T>>() {
+                    public Map<String, T> call() throws IOException {
+                        return lookup.lookUp(batch);
+                    }
+                }));
+            }
+            for (Future<Map<String, T>> batchResult : batchResults) {
+                results.putAll(batchResult.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while looking up items", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Items could not be looked up", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
 
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == 200) {
-                Header header = response.getEntity().getContentType();
-                System.out.println(header.getValue());
-                InputStream rdfItemData = response.getEntity().getContent();
-                Model responseModel = ModelFactory.createDefaultModel();
-                responseModel.read(rdfItemData, "RDF/XML");
+    /**
+     * Looks up one batch of items (at most BATCH_SIZE) with one wbgetentities request.
+     */
+    private static Map<String, ItemFacts> lookUpBatch(List<String> batch, String targetItem) throws IOException {
 
-                String queryString = "SELECT ?item WHERE {?item ?p <https://www.wikidata.org/entity/Q10313>}";
+        Map<String, ItemFacts> facts = new HashMap<String, ItemFacts>();
+        InputStream in = null;
+        long started = RunMetrics.getShared().start();
+        HttpResponse response = askAPI("action=wbgetentities&format=json&props=" + encode("info|claims") + "&ids=" + encode(join(batch)));
+        try {
+            in = response.getEntity().getContent();
+            EntityClaimsReader.readEntities(in, targetItem, facts);
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+            RequestScheduler.getShared().getTransport().release(response);
+            RunMetrics.getShared().stop(RunMetrics.ITEM_LOOKUP_BATCH, started);
+        }
+        return facts;
+    }
 
-                QueryExecution qe = QueryExecutionFactory.create(queryString, responseModel);
-                ResultSet results = qe.execSelect();
-                QuerySolution qs = null;
+    /**
+     * Gets the last revision of one batch of items (at most BATCH_SIZE) with one action:query / prop:info request.
+     */
+    private static Map<String, Long> lookUpLastRevisions(List<String> batch) throws IOException {
 
-                if(results.hasNext()){
-                    resultMethod=true;
+        Map<String, Long> lastRevisions = new HashMap<String, Long>();
+        InputStream in = null;
+        long started = RunMetrics.getShared().start();
+        HttpResponse response = askAPI("action=query&prop=info&format=json&titles=" + encode(join(batch)));
+        try {
+            in = response.getEntity().getContent();
+            PageInfoReader.readLastRevisions(in, lastRevisions);
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+            RequestScheduler.getShared().getTransport().release(response);
+            RunMetrics.getShared().stop(RunMetrics.ITEM_REVISIONS_BATCH, started);
+        }
+        return lastRevisions;
+    }
 
-                }
+    /**
+     * Gets the size of one batch of revisions (at most BATCH_SIZE) from the cache or with one action:query /
+     * prop:revisions request.
+     */
+    private static Map<String, Integer> lookUpRevisionSizes(List<String> batch, ResponseCache cache) throws IOException {
 
+        Map<Long, Integer> read = new HashMap<Long, Integer>();
+        String cacheKey = "revisions|" + join(batch);
+        InputStream cached = cache == null ? null : cache.open(cacheKey);
 
+        if (cached != null) {
+            try {
+                RevisionSizeReader.readSizes(cached, read);
+            } finally {
+                cached.close();
+            }
+        } else if (cache == null || !cache.isOffline()) {
+            long started = RunMetrics.getShared().start();
+            HttpResponse response = askAPI("action=query&prop=revisions&format=json&rvprop=" + encode("ids|size") + "&revids=" + encode(join(batch)));
+            try {
+                // Reads the batch before storing it, so that responses with errors are not cached.
+                byte[] body = EntityUtils.toByteArray(response.getEntity());
+                RevisionSizeReader.readSizes(new ByteArrayInputStream(body), read);
+                if (cache != null) {
+                    cache.store(cacheKey, body);
+                }
+            } finally {
+                RequestScheduler.getShared().getTransport().release(response);
+                RunMetrics.getShared().stop(RunMetrics.REVISION_SIZES_BATCH, started);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        finally {
-            return resultMethod;
+
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
+        for (Map.Entry<Long, Integer> size : read.entrySet()) {
+            sizes.put(size.getKey().toString(), size.getValue());
         }
+        return sizes;
+    }
 
+    /**
+     * Sends a request to the Wikidata API through the shared request scheduler.
+     * @param parameters parameters of the request (already encoded), without maxlag.
+     * @return the response (with content), whose entity has to be released.
+     */
+    private static HttpResponse askAPI(String parameters) throws IOException {
 
-    }
+        RequestScheduler scheduler = RequestScheduler.getShared();
 
+        HttpGet request = new HttpGet("https://www.wikidata.org/w/api.php?" + parameters + "&maxlag=" + scheduler.getMaxLag());
+        request.setHeader("Accept", "application/json");
 
+        HttpResponse response = scheduler.execute(request);
+        if (response.getEntity() == null) {
+            scheduler.getTransport().release(response);
+            throw new IOException("The Wikidata API answered without content to " + request.getURI());
+        }
+        return response;
+    }
 
+    // Joins identifiers with "|", as the API expects lists of values.
+    private static String join(List<String> ids) {
+        StringBuilder joined = new StringBuilder();
+        for (String id : ids) {
+            if (joined.length() > 0) {
+                joined.append('|');
+            }
+            joined.append(id);
+        }
+        return joined.toString();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
 }
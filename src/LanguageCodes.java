@@ -0,0 +1,49 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author csarasua
+ * Registry of the language codes found in the edits. Every code gets a small number (its id), so the counts by
+ * language can be kept in arrays indexed by id (see LanguageCounts). The ids are shared by all the analyzers of a run.
+ */
+public final class LanguageCodes {
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static final List<String> codes = new ArrayList<String>();
+
+    private LanguageCodes() {
+    }
+
+    /**
+     * Gets the id of a language code, registering the code if it is new.
+     * @param code the language code (e.g. "en", "es-formal").
+     * @return the id of the code.
+     */
+    public static int intern(String code) {
+        Integer id = ids.get(code);
+        if (id != null) {
+            return id;
+        }
+        synchronized (codes) {
+            id = ids.get(code);
+            if (id == null) {
+                id = codes.size();
+                codes.add(code);
+                ids.put(code, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Gets the language code of an id.
+     * @param id an id given by intern.
+     * @return the language code.
+     */
+    public static String code(int id) {
+        synchronized (codes) {
+            return codes.get(id);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author csarasua
+ * Number of edits by language, kept in an array indexed by the id of the language code (see LanguageCodes).
+ * Objects of this class are not thread-safe.
+ */
+public class LanguageCounts {
+
+    private int[] counts = new int[16];
+
+
+    /**
+     * Adds one edit in a language.
+     * @param languageId the id of the language code.
+     */
+    public void increment(int languageId) {
+        add(languageId, 1);
+    }
+
+    /**
+     * Adds a number of edits in a language.
+     * @param languageId the id of the language code.
+     * @param count the number of edits.
+     */
+    public void add(int languageId, int count) {
+        if (languageId >= this.counts.length) {
+            int[] larger = new int[Math.max(languageId + 1, this.counts.length * 2)];
+            System.arraycopy(this.counts, 0, larger, 0, this.counts.length);
+            this.counts = larger;
+        }
+        this.counts[languageId] += count;
+    }
+
+    /**
+     * Gets the number of edits in a language.
+     * @param languageId the id of the language code.
+     * @return the number of edits.
+     */
+    public int get(int languageId) {
+        return languageId < this.counts.length ? this.counts[languageId] : 0;
+    }
+
+    /**
+     * Adds the counts of another object to the counts of this one.
+     * @param other the counts to add.
+     */
+    public void merge(LanguageCounts other) {
+        for (int id = other.counts.length - 1; id >= 0; id--) {
+            if (other.counts[id] != 0) {
+                add(id, other.counts[id]);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of languages with at least one edit.
+     * @return the number of languages.
+     */
+    public int size() {
+        int size = 0;
+        for (int count : this.counts) {
+            if (count != 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the ids of the languages with most edits, sorted by number of edits (and by language code on ties).
+     * @param n maximum number of languages.
+     * @return the ids of at most n languages.
+     */
+    public List<Integer> top(int n) {
+        List<Integer> languageIds = new ArrayList<Integer>();
+        for (int id = 0; id < this.counts.length; id++) {
+            if (this.counts[id] != 0) {
+                languageIds.add(id);
+            }
+        }
+        Collections.sort(languageIds, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                if (counts[a] != counts[b]) {
+                    return counts[a] > counts[b] ? -1 : 1;
+                }
+                return LanguageCodes.code(a).compareTo(LanguageCodes.code(b));
+            }
+        });
+        return languageIds.size() > n ? languageIds.subList(0, n) : languageIds;
+    }
+}
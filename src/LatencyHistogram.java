@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author csarasua
+ * Histogram of durations with buckets of powers of two (in microseconds): bucket i counts the durations up to 2^i
+ * microseconds, the last one the longer durations. Recording a duration only increments counters, without locks.
+ * Objects of this class can be used by several threads at the same time.
+ */
+public class LatencyHistogram {
+
+    // Number of buckets: up to 2^(BUCKETS - 2) microseconds (about 9 minutes), and a last bucket for longer durations.
+    public static final int BUCKETS = 31;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+
+    /**
+     * Records a duration.
+     * @param nanos the duration (nanoseconds).
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        long micros = nanos / 1000;
+        // Smallest i such that micros <= 2^i.
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        this.buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        this.count.incrementAndGet();
+        this.sumNanos.addAndGet(nanos);
+
+        long max = this.maxNanos.get();
+        while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+            max = this.maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public long getSumNanos() {
+        return this.sumNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * Gets the number of durations of a bucket.
+     * @param bucket the bucket (0 to BUCKETS - 1).
+     */
+    public long getBucketCount(int bucket) {
+        return this.buckets.get(bucket);
+    }
+
+    /**
+     * Gets the upper bound of a bucket.
+     * @param bucket the bucket (0 to BUCKETS - 2; the last bucket has no bound).
+     * @return the longest duration of the bucket (microseconds).
+     */
+    public static long getBucketBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * Gets (approximately) a quantile of the durations: the upper bound of the bucket where it falls.
+     * @param quantile the quantile (e.g. 0.99).
+     * @return the duration (microseconds), or 0 if there are no durations.
+     */
+    public long getQuantileMicros(double quantile) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            total = total + counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen = seen + counts[i];
+            if (seen >= rank) {
+                return getBucketBoundMicros(i);
+            }
+        }
+        return this.maxNanos.get() / 1000;
+    }
+}
@@ -1,14 +1,13 @@
 import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,53 +23,240 @@ public class Main {
     static String workingDir = System.getProperty("user.dir");
     static String workingDirForFileName = workingDir.replace("\\", "/");
 
+    // Number of participants whose contributions are analyzed at the same time.
+    static int concurrentUsers = 8;
+    // Number of registered participants whose contributions are asked in the same request (at most 50).
+    static int usersPerRequest = 50;
+    // Whether the reports are written by a separate writer thread.
+    static boolean asyncReports = true;
+    // Directory of the local copy of the responses of the Wikidata API.
+    static String cacheDir = workingDirForFileName + "/cache";
+    // Whether the analysis is done only with the local copy of the responses (without asking the Wikidata API).
+    static boolean offline = false;
+    // Whether the progress is recorded in a journal, so that an interrupted run goes on where it stopped.
+    static boolean checkpointing = true;
+    // Maximum number of items kept in the cache of looked up items, shared by all the analyses.
+    static int itemCacheSize = 200000;
+    // Number of lookups of edited items sent at the same time, while the contributions are read.
+    static int concurrentLookups = 4;
+    static ItemFactsCache itemFactsCache;
+    // Directory of the store of the read contributions (null: they are not kept).
+    static String contributionStoreDir = workingDirForFileName + "/store";
+    // File of the metrics of the run (Prometheus text, or JSON if it ends with ".json"), written every metricsIntervalMillis
+    // during the run and at its end (null: no metrics).
+    static String metricsFile = workingDirForFileName + "/reports/metrics.prom";
+    static long metricsIntervalMillis = 30000;
+    // Stream of recent changes followed in live mode, and time between two snapshots of the global reports (ms).
+    static String recentChangesStream = "https://stream.wikimedia.org/v2/stream/recentchange";
+    static long liveSnapshotIntervalMillis = 60000;
+    // Length of the live event (hours from the start of the run).
+    static int liveHours = 12;
+    // Whether the bytes added and removed by the edits are measured from the store (the sizes before the edits that are
+    // not in the store are asked to the Wikidata API, or only read from the local copy of the responses in offline mode).
+    static boolean byteDeltas = true;
+    // Whether the reports are written from the store of a previous run (without reading the contributions again).
+    static boolean fromStore = false;
+    // Whether only the contributions made since the previous run are read (their counts are added to the kept ones).
+    static boolean incremental = false;
+    // Shard of the participants analyzed by this process (from 0) and number of shards, when the list is split among
+    // several processes; and whether this process only merges the results of the shards.
+    static int shard = 0;
+    static int shards = 1;
+    static boolean mergeShards = false;
+
     public static void main(String args[]) {
 
-        // Analyzes all the contributions of the participants *during* the Wikidata Editathon
-        runParticipantsAnalyzer();
-        // Analyzes all the contributions of the participants *during the month after* the Wikidata Editathon
-        runParticipantsAposterioriAnalyzer();
+        // Run with the argument "offline" to repeat the analysis from the local copy of the responses.
+        if (args.length > 0 && args[0].equals("offline")) {
+            offline = true;
+        }
+        // Run with the argument "fromstore" to write the global reports again from the store of contributions.
+        if (args.length > 0 && args[0].equals("fromstore")) {
+            fromStore = true;
+        }
+        // Run with the argument "delta" to add the contributions made since the previous "delta" run to its reports.
+        if (args.length > 0 && args[0].equals("delta")) {
+            incremental = true;
+        }
+        // Run with the arguments "shard k n" (k from 1 to n) in n processes to analyze the shard k of the participants in
+        // each of them, and then with "merge n" to write the reports of all the participants from the n shards.
+        if (args.length > 2 && args[0].equals("shard")) {
+            shard = Integer.parseInt(args[1]) - 1;
+            shards = Integer.parseInt(args[2]);
+            // Every process writes its own metrics.
+            if (metricsFile != null) {
+                metricsFile = metricsFile + DSSWEAnalyzer.shardSuffix(shard, shards);
+            }
+        }
+        if (args.length > 1 && args[0].equals("merge")) {
+            mergeShards = true;
+            shards = Integer.parseInt(args[1]);
+        }
+
+        // Opens the cache of looked up items (kept between runs).
+        try {
+            itemFactsCache = new ItemFactsCache(new File(cacheDir, "items.bin"), ItemLooker.DSS_ITEM, itemCacheSize);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // Records the metrics of the run.
+        RunMetrics metrics = RunMetrics.getShared();
+        metrics.setEnabled(metricsFile != null);
+        if (metricsFile != null) {
+            metrics.reset();
+            metrics.startSnapshots(new File(metricsFile), metricsIntervalMillis);
+        }
+
+        if (args.length > 0 && args[0].equals("live")) {
+            // Follows the contributions of the participants while the event takes place.
+            runLiveAnalyzer();
+        } else if (args.length > 1 && args[0].equals("replay")) {
+            // Follows a recorded stream of recent changes (argument: file of the stream), as if it was the live event.
+            runReplayAnalyzer(new File(args[1]));
+        } else {
+            // Analyzes all the contributions of the participants *during* the Wikidata Editathon and *during the month after* it
+            runParticipantsWindowsAnalyzer();
+        }
 
 
         /*
         // Saves a local copy of all  the contributions of the participants of the editathon during the event
         saveAllContributions();
         */
+
+        // Saves the cache of looked up items for the next run.
+        if (itemFactsCache != null) {
+            try {
+                itemFactsCache.save();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Writes the metrics of the whole run.
+        if (metricsFile != null) {
+            metrics.stopSnapshots();
+            try {
+                metrics.writeTo(new File(metricsFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Closes all the connections to Wikidata.
+        WikidataTransport.shutdownShared();
     }
 
 
     /**
-     * Method to analyze the activity of the participants during the Wikidata Editathon.
+     * Method to analyze the activity of the participants during the Wikidata Editathon and during the month after it.
+     * Timezone: CEST time, was GTM+2.
+     * The event took place between 9:00 and 19:00 aprox. We extend the period of time to be analyzed further just in case.
+     * The contributions of each participant are read once for both periods of time, and reported for each of them.
      */
-    private static void runParticipantsAnalyzer()
+    private static void runParticipantsWindowsAnalyzer()
     {
         // Get the list of all participants.
         List<String> participants = getDSSWEparticipants();
-        // Create and initialize an analyzer object (start and end of the Wikidata editathon).
-        DSSWEAnalyzer partAnalyzer = new DSSWEAnalyzer("2015-07-03T07:00:00Z", "2015-07-03T18:00:00Z", participants, "/reports/edits_byusers_editathon.txt", "/reports/report_global_edits.txt");
-        // Run the analysis by analyzing the contributions of participants.
-        partAnalyzer.processByUsers();
+
+        List<TimeWindow> windows = new ArrayList<TimeWindow>();
+        // Start and end of the Wikidata editathon.
+        windows.add(new TimeWindow("editathon", "2015-07-03T07:00:00Z", "2015-07-03T18:00:00Z", "/reports/edits_byusers_editathon.txt", "/reports/report_global_edits.txt"));
+        // Start and end of the a posteriori period of time to track (e.g. 1 month).
+        windows.add(new TimeWindow("aposteriori", "2015-07-03T18:00:00Z", "2015-08-03T18:00:00Z", "/reports/edits_byusers_editathon_aposteriori.txt", "/reports/report_global_edits_aposteriori.txt"));
+
+        // Create and initialize an analyzer object for both periods of time.
+        DSSWEAnalyzer partAnalyzer = new DSSWEAnalyzer(windows, participants);
+        configureAnalyzer(partAnalyzer);
+        if (mergeShards) {
+            // Writes the reports of all the participants from the results of the shards.
+            partAnalyzer.processShards(shards);
+        } else if (fromStore) {
+            // Counts the contributions kept by a previous run.
+            try {
+                partAnalyzer.processFromStore(new ContributionStore(new File(contributionStoreDir)));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            if (shards > 1) {
+                // Analyzes only a shard of the participants. The edited items are looked up and the byte deltas are
+                // measured when the shards are merged.
+                partAnalyzer.setShard(shard, shards);
+                partAnalyzer.setLookUpEditedItems(false);
+                partAnalyzer.setByteDeltas(false);
+            }
+            // Run the analysis by analyzing the contributions of participants.
+            partAnalyzer.processByUsers();
+        }
 
     }
 
     /**
-     * Method to analyze the activity of the participants during the Wikidata Editathon.
-     * Timezone: CEST time, was GTM+2.
-     * The event took place between 9:00 and 19:00 aprox. We extend the period of time to be analyzed further just in case.
+     * Method to follow the activity of the participants during a live event, from the stream of recent changes of
+     * Wikimedia: the event starts now and lasts liveHours hours.
      */
-    private static void runParticipantsAposterioriAnalyzer()
+    private static void runLiveAnalyzer()
     {
-        // Get the list of all participants.
-        List<String> participants = getDSSWEparticipants();
-        // Create and initialize an analyzer object (start and end of the a posteriori period of time to track). Split the time (e.g. 1 month) in two periods of time due to the max. number of updates to
-        DSSWEAnalyzer partAnalyzer = new DSSWEAnalyzer("2015-07-03T18:00:00Z", "2015-07-24T18:00:00Z", participants, "/reports/edits_byusers_editathon_aposteriori.txt", "/reports/report_global_edits_aposteriori.txt");
-        // Run the analysis by analyzing the contributions of participants.
-        partAnalyzer.processByUsers();
+        long now = System.currentTimeMillis() / 1000;
+        List<TimeWindow> windows = new ArrayList<TimeWindow>();
+        windows.add(new TimeWindow("live", Timestamps.format(now), Timestamps.format(now + liveHours * 3600L), "/reports/edits_byusers_live.txt", "/reports/report_global_edits_live.txt"));
+
+        DSSWEAnalyzer liveAnalyzer = new DSSWEAnalyzer(windows, getDSSWEparticipants());
+        configureAnalyzer(liveAnalyzer);
+        liveAnalyzer.processLive(recentChangesStream, liveSnapshotIntervalMillis, true);
+    }
 
-        //Repeat for the second period of time, after the Wikidata editathon.
-        DSSWEAnalyzer partAnalyzer2 = new DSSWEAnalyzer("2015-07-24T18:00:00Z", "2015-08-03T18:00:00Z", participants, "/reports/edits_byusers_editathon_aposteriori2.txt", "/reports/report_global_edits_aposteriori2.txt");
-        partAnalyzer2.processByUsers();
+    /**
+     * Method to follow a recorded stream of recent changes of the Wikidata Editathon (e.g. to try the live mode before
+     * an event), served by a local SseReplayServer, for the same periods of time as runParticipantsWindowsAnalyzer.
+     * @param recordedFeed the file of the recorded stream.
+     */
+    private static void runReplayAnalyzer(File recordedFeed)
+    {
+        List<TimeWindow> windows = new ArrayList<TimeWindow>();
+        windows.add(new TimeWindow("editathon", "2015-07-03T07:00:00Z", "2015-07-03T18:00:00Z", "/reports/edits_byusers_editathon.txt", "/reports/report_global_edits.txt"));
+        windows.add(new TimeWindow("aposteriori", "2015-07-03T18:00:00Z", "2015-08-03T18:00:00Z", "/reports/edits_byusers_editathon_aposteriori.txt", "/reports/report_global_edits_aposteriori.txt"));
 
+        SseReplayServer server;
+        try {
+            server = new SseReplayServer(recordedFeed, 0, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        server.start();
+        try {
+            DSSWEAnalyzer replayAnalyzer = new DSSWEAnalyzer(windows, getDSSWEparticipants());
+            configureAnalyzer(replayAnalyzer);
+            replayAnalyzer.processLive(server.getUrl(), liveSnapshotIntervalMillis, false);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Sets the options of the run (concurrency, reports, cache of responses, checkpointing, item lookups, store of
+     * contributions and byte deltas) in an analyzer.
+     * @param analyzer the analyzer to configure.
+     */
+    private static void configureAnalyzer(DSSWEAnalyzer analyzer)
+    {
+        analyzer.setConcurrentUsers(concurrentUsers);
+        analyzer.setUsersPerRequest(usersPerRequest);
+        analyzer.setAsyncReports(asyncReports);
+        analyzer.setResponseCache(new ResponseCache(new File(cacheDir), offline ? ResponseCache.Mode.OFFLINE : ResponseCache.Mode.READ_WRITE));
+        analyzer.setCheckpointing(checkpointing);
+        analyzer.setIncremental(incremental);
+        // The edited items are looked up in the Wikidata API, which is not asked in offline mode.
+        analyzer.setLookUpEditedItems(!offline);
+        analyzer.setItemFactsCache(itemFactsCache);
+        analyzer.setConcurrentLookups(concurrentLookups);
+        if (contributionStoreDir != null) {
+            analyzer.setContributionStoreDir(new File(contributionStoreDir));
+        }
+        analyzer.setByteDeltas(byteDeltas);
     }
 
     /**
@@ -96,19 +282,21 @@ public class Main {
     private static void forceDownloadUserContributions(String userName)
     {
 
-        // Create the HTTP client.
-        HttpClient client = new DefaultHttpClient();
-
-        // Create the HTTP GET request. Use the action:query / list:usercontribs option of the Wikidata API. default 10, max. 500 contributions.
-        HttpGet getUserContributions = new HttpGet("https://www.wikidata.org/w/api.php?action=query&list=usercontribs&ucuser="+userName+"&uclimit=500");
-
-        //Set the header of the HTTP GET call.
-        getUserContributions.setHeader("Accept", "application/json");
+        // Gets the shared request scheduler and HTTP transport.
+        RequestScheduler scheduler = RequestScheduler.getShared();
+        WikidataTransport transport = scheduler.getTransport();
 
         HttpResponse response = null;
         try {
-            //Execute the HTTP GET request and obtain the response.
-            response = client.execute(getUserContributions);
+            // Create the HTTP GET request. Use the action:query / list:usercontribs option of the Wikidata API. default 10, max. 500 contributions.
+            // The user name is URL-encoded (spaces, "&", "|" and non-ASCII characters), as in DSSWEAnalyzer.buildUserContributionsURL.
+            HttpGet getUserContributions = new HttpGet("https://www.wikidata.org/w/api.php?action=query&list=usercontribs&ucuser="+URLEncoder.encode(userName, "UTF-8")+"&uclimit=500&maxlag="+scheduler.getMaxLag());
+
+            //Set the header of the HTTP GET call.
+            getUserContributions.setHeader("Accept", "application/json");
+
+            //Execute the HTTP GET request (waiting for its turn and asking again if it fails) and obtain the response.
+            response = scheduler.execute(getUserContributions);
 
             // Get the status of the response.
             int statusCode = response.getStatusLine().getStatusCode();
@@ -137,6 +325,9 @@ public class Main {
 
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            // Gives the connection back to the pool.
+            transport.release(response);
         }
     }
 
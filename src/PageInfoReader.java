@@ -0,0 +1,85 @@
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Streaming reader of the responses of the action:query / prop:info option of the Wikidata API, used to get the last
+ * revision of many pages (items) with one small request.
+ *
+ * Shape of API response:
+ * {
+ *  "batchcomplete": "",
+ *  "query": {
+ *    "pages": {
+ *      "22387768": {"pageid": 22387768, "ns": 0, "title": "Q20640474", "contentmodel": "wikibase-item",
+ *                   "touched": "2015-07-03T15:57:04Z", "lastrevid": 225922733, "length": 2369},
+ *      "-1": {"ns": 0, "title": "Q999999999", "missing": ""}, ....
+ */
+public final class PageInfoReader {
+
+    private PageInfoReader() {
+    }
+
+    /**
+     * Reads the last revision of every page of a response.
+     * @param in the body of the response (it is not closed).
+     * @param lastRevisions map to which the last revision of every page is added, by title (-1 for missing pages).
+     * @throws IOException if the response could not be read or the API answered with an error.
+     */
+    public static void readLastRevisions(InputStream in, final Map<String, Long> lastRevisions) throws IOException {
+
+        WikidataJson.readResponse(in, new WikidataJson.MemberReader() {
+            public boolean readMember(String name, JsonToken value, JsonParser parser) throws IOException {
+                if (name.equals("query") && value == JsonToken.START_OBJECT) {
+                    readQuery(parser, lastRevisions);
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    // Reads the "query" object (the parser is at its START_OBJECT).
+    private static void readQuery(JsonParser parser, Map<String, Long> lastRevisions) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (name.equals("pages") && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readPage(parser, lastRevisions);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // Reads one page (the parser is at its START_OBJECT).
+    private static void readPage(JsonParser parser, Map<String, Long> lastRevisions) throws IOException {
+        String title = null;
+        long lastRevId = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals("title") && value == JsonToken.VALUE_STRING) {
+                title = parser.getText();
+            } else if (name.equals("lastrevid") && value == JsonToken.VALUE_NUMBER_INT) {
+                lastRevId = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (title != null) {
+            lastRevisions.put(title, lastRevId);
+        }
+    }
+}
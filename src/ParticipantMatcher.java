@@ -0,0 +1,74 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Finds the participant that made an edit, from the user of the edit: registered participants by their name (hashed),
+ * anonymous participants ("IP@" and their IP ranges, e.g. "IP@158.227.136.0/21,2001:db8::/32" or "IP@158.227.136.",
+ * see IpRange) by the most specific range containing the IP address, walking a binary trie of the ranges bit by bit.
+ * Finding the participant of an edit takes one hash lookup and at most one step per bit of the address, whatever the
+ * number of participants and ranges.
+ * Objects of this class are immutable once created and can be used by several threads at the same time.
+ */
+public class ParticipantMatcher {
+
+    private final Map<String, String> registered = new HashMap<String, String>();
+    private final IpRangeTrie<String> ranges = new IpRangeTrie<String>();
+
+
+    /**
+     * Creates a matcher for the participants of a list.
+     * @param participants user names and "IP@IP ranges" entries, as in the list of participants.
+     * @throws IllegalArgumentException if the ranges of an entry are not valid.
+     */
+    public ParticipantMatcher(List<String> participants) {
+        for (String participant : participants) {
+            if (participant.contains("IP@")) {
+                for (IpRange range : IpRange.parseList(participant.split("@")[1])) {
+                    this.ranges.put(range, participant);
+                }
+            } else {
+                this.registered.put(participant, participant);
+                // The API gives the names in their canonical form (e.g. "Some user" for "some_user").
+                String canonical = canonicalName(participant);
+                if (!this.registered.containsKey(canonical)) {
+                    this.registered.put(canonical, participant);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the participant of an edit.
+     * @param user the user of the edit (name, or IP address for anonymous edits).
+     * @return the entry of the participant in the list of participants (the most specific matching range for IP addresses),
+     *         or null if the user is not a participant.
+     */
+    public String match(String user) {
+        if (user == null) {
+            return null;
+        }
+        String participant = this.registered.get(user);
+        if (participant != null) {
+            return participant;
+        }
+
+        // Anonymous edit: the user is the IP address.
+        return this.ranges.match(IpRange.parseAddress(user));
+    }
+
+    /**
+     * Gets the canonical form of a user name, as given by the API: spaces instead of underscores, and the first letter
+     * in upper case.
+     * @param name the user name.
+     * @return the canonical name.
+     */
+    static String canonicalName(String name) {
+        String canonical = name.replace('_', ' ').trim();
+        if (canonical.isEmpty()) {
+            return canonical;
+        }
+        return canonical.substring(0, 1).toUpperCase() + canonical.substring(1);
+    }
+}
@@ -0,0 +1,337 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * @author csarasua
+ * Journal of the progress of an analysis, so that an interrupted run can go on where it stopped.
+ * For every page of contributions of a user the journal records the continuation token of the next page and, for every
+ * window of the analysis (see TimeWindow), the length of the report of the user after the page and the counts of the page. A run started again with the same journal skips
+ * the users already completed and goes on with the interrupted one from its last recorded page.
+ *
+ * The journal file is only appended. Every record is [length][CRC32][content], so a record half written when the
+ * process died is detected and dropped. The records are written to disk (fsync) in batches: at most every
+ * syncEveryRecords records or syncIntervalMillis milliseconds, and when the journal is closed.
+ * The journal can be used by several threads at the same time.
+ */
+public class ProgressJournal {
+
+    // Types of records.
+    private static final byte HEADER = 0;
+    private static final byte PAGE = 1;
+    private static final byte RESET = 2;
+
+    /**
+     * Progress of one user: counts and report lengths (one per window) up to the last recorded page, and where to go on.
+     */
+    public static class UserProgress {
+        final String user;
+        ContributionAggregates[] aggregates;
+        String continueToken = null;
+        long[] reportLengths;
+        boolean completed = false;
+        boolean started = false;
+
+        UserProgress(String user, int windows) {
+            this.user = user;
+            this.aggregates = newAggregates(windows);
+            this.reportLengths = new long[windows];
+        }
+
+        public String getContinueToken() {
+            return continueToken;
+        }
+
+        public long getReportLength(int window) {
+            return reportLengths[window];
+        }
+
+        public boolean isStarted() {
+            return started;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * Gets a copy of the counts of the user up to the last recorded page.
+         * @return new counts (one per window), which can be changed without changing the progress.
+         */
+        public ContributionAggregates[] copyOfAggregates() {
+            ContributionAggregates[] copy = newAggregates(this.aggregates.length);
+            for (int w = 0; w < copy.length; w++) {
+                copy[w].merge(this.aggregates[w]);
+            }
+            return copy;
+        }
+    }
+
+    private final File file;
+    private final int windows;
+    // Whether the journal goes on with the progress of a previous run.
+    private final boolean resumed;
+    private final Map<String, UserProgress> progressByUser = new HashMap<String, UserProgress>();
+
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+
+    private int syncEveryRecords = 64;
+    private long syncIntervalMillis = 1000;
+    private int recordsSinceSync = 0;
+    private long lastSync = System.currentTimeMillis();
+
+
+    /**
+     * Opens a journal. If the file contains the journal of the same run (same runId), its progress is loaded;
+     * otherwise the file is started again.
+     * @param file the journal file.
+     * @param runId identifier of the run (e.g. windows and participants), to detect journals of other runs.
+     * @param windows number of windows of the analysis.
+     * @throws IOException if the journal could not be read or opened.
+     */
+    public ProgressJournal(File file, String runId, int windows) throws IOException {
+        this.file = file;
+        this.windows = windows;
+
+        long validLength = file.isFile() ? load(runId) : -1;
+        this.resumed = validLength >= 0;
+
+        if (validLength < 0) {
+            // New run: starts the file again with the header.
+            this.progressByUser.clear();
+            this.fileOut = new FileOutputStream(file, false);
+            this.out = new DataOutputStream(new BufferedOutputStream(this.fileOut));
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            DataOutputStream contentOut = new DataOutputStream(content);
+            contentOut.writeByte(HEADER);
+            contentOut.writeUTF(runId);
+            writeRecord(content.toByteArray());
+            sync();
+        } else {
+            // Same run: drops what follows the last complete record and appends after it.
+            RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+            try {
+                truncate.setLength(validLength);
+            } finally {
+                truncate.close();
+            }
+            this.fileOut = new FileOutputStream(file, true);
+            this.out = new DataOutputStream(new BufferedOutputStream(this.fileOut));
+        }
+    }
+
+    /**
+     * Whether the journal was opened with the progress of a previous (interrupted) run of the same analysis.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Gets the progress of a user (an empty progress if the journal has nothing about the user).
+     * @param user the user name.
+     * @return the progress of the user, updated by recordPage.
+     */
+    public synchronized UserProgress getProgress(String user) {
+        UserProgress progress = this.progressByUser.get(user);
+        if (progress == null) {
+            progress = new UserProgress(user, this.windows);
+            this.progressByUser.put(user, progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Records that a page of contributions of a user has been counted and reported.
+     * @param progress the progress of the user (given by getProgress).
+     * @param nextContinueToken continuation token of the next page (null if the page was the last one).
+     * @param reportLengths length of the report of the user in each window after reporting the page (already flushed).
+     * @param pageAggregates counts of the contributions of the page in each window.
+     * @throws IOException if the record could not be written.
+     */
+    public synchronized void recordPage(UserProgress progress, String nextContinueToken, long[] reportLengths, ContributionAggregates[] pageAggregates) throws IOException {
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream contentOut = new DataOutputStream(content);
+        contentOut.writeByte(PAGE);
+        contentOut.writeUTF(progress.user);
+        contentOut.writeBoolean(nextContinueToken != null);
+        contentOut.writeUTF(nextContinueToken != null ? nextContinueToken : "");
+        for (int w = 0; w < this.windows; w++) {
+            contentOut.writeLong(reportLengths[w]);
+            pageAggregates[w].writeTo(contentOut);
+        }
+        writeRecord(content.toByteArray());
+
+        applyPage(progress, nextContinueToken, reportLengths, pageAggregates);
+        syncIfDue();
+    }
+
+    /**
+     * Records that the progress of a user is lost (e.g. its report is missing) and the user has to be analyzed again.
+     * @param progress the progress of the user (given by getProgress).
+     * @throws IOException if the record could not be written.
+     */
+    public synchronized void recordReset(UserProgress progress) throws IOException {
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream contentOut = new DataOutputStream(content);
+        contentOut.writeByte(RESET);
+        contentOut.writeUTF(progress.user);
+        writeRecord(content.toByteArray());
+
+        applyReset(progress);
+        syncIfDue();
+    }
+
+    /**
+     * Writes to disk all the records and closes the journal.
+     * @throws IOException if the journal could not be written.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Closes and deletes the journal (when the run has been completed).
+     * @throws IOException if the journal could not be closed.
+     */
+    public synchronized void delete() throws IOException {
+        this.out.close();
+        this.file.delete();
+    }
+
+    public synchronized void setSyncEveryRecords(int syncEveryRecords) {
+        this.syncEveryRecords = syncEveryRecords;
+    }
+
+    public synchronized void setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    private void applyPage(UserProgress progress, String nextContinueToken, long[] reportLengths, ContributionAggregates[] pageAggregates) {
+        for (int w = 0; w < this.windows; w++) {
+            progress.aggregates[w].merge(pageAggregates[w]);
+            progress.reportLengths[w] = reportLengths[w];
+        }
+        progress.continueToken = nextContinueToken;
+        progress.completed = (nextContinueToken == null);
+        progress.started = true;
+    }
+
+    private void applyReset(UserProgress progress) {
+        progress.aggregates = newAggregates(this.windows);
+        progress.continueToken = null;
+        progress.reportLengths = new long[this.windows];
+        progress.completed = false;
+        progress.started = false;
+    }
+
+    /**
+     * Loads the records of the journal file.
+     * @return the length of the file up to the last complete record, or -1 if the file is the journal of another run.
+     */
+    private long load(String runId) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        long validLength = 0;
+        try {
+            boolean header = true;
+            while (true) {
+                byte[] content;
+                try {
+                    int length = in.readInt();
+                    long crc = in.readInt() & 0xFFFFFFFFL;
+                    if (length < 0 || length > (64 << 20)) {
+                        break;
+                    }
+                    content = new byte[length];
+                    in.readFully(content);
+                    if (crc(content) != crc) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    // Record half written: the rest of the file is dropped.
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(content));
+                byte type = record.readByte();
+                if (header) {
+                    if (type != HEADER || !record.readUTF().equals(runId)) {
+                        return -1;
+                    }
+                    header = false;
+                } else if (type == PAGE) {
+                    UserProgress progress = getProgress(record.readUTF());
+                    boolean hasNext = record.readBoolean();
+                    String token = record.readUTF();
+                    long[] reportLengths = new long[this.windows];
+                    ContributionAggregates[] pageAggregates = new ContributionAggregates[this.windows];
+                    for (int w = 0; w < this.windows; w++) {
+                        reportLengths[w] = record.readLong();
+                        pageAggregates[w] = ContributionAggregates.readFrom(record);
+                    }
+                    applyPage(progress, hasNext ? token : null, reportLengths, pageAggregates);
+                } else if (type == RESET) {
+                    applyReset(getProgress(record.readUTF()));
+                }
+                validLength = validLength + 8 + content.length;
+            }
+            return header ? -1 : validLength;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeRecord(byte[] content) throws IOException {
+        this.out.writeInt(content.length);
+        this.out.writeInt((int) crc(content));
+        this.out.write(content);
+        this.recordsSinceSync++;
+    }
+
+    private void syncIfDue() throws IOException {
+        if (this.recordsSinceSync >= this.syncEveryRecords || System.currentTimeMillis() - this.lastSync >= this.syncIntervalMillis) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        this.out.flush();
+        this.fileOut.getFD().sync();
+        this.recordsSinceSync = 0;
+        this.lastSync = System.currentTimeMillis();
+    }
+
+    private static ContributionAggregates[] newAggregates(int windows) {
+        ContributionAggregates[] aggregates = new ContributionAggregates[windows];
+        for (int w = 0; w < windows; w++) {
+            aggregates[w] = new ContributionAggregates();
+        }
+        return aggregates;
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue();
+    }
+}
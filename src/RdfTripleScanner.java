@@ -0,0 +1,99 @@
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.io.InputStream;
+
+/**
+ * @author csarasua
+ * Scanner of RDF documents looking for a triple with a given object (and, optionally, a given predicate).
+ * The document is parsed as a stream (Jena RIOT): each triple is checked as soon as it is read and forgotten
+ * afterwards, no Model is built, and the parsing stops at the first matching triple.
+ * Objects of this class are immutable and can be used by several threads at the same time.
+ */
+public class RdfTripleScanner {
+
+    // Thrown by the stream to stop the parser at the first match. It is not an error: it has no stack trace and one
+    // instance is thrown by every scan (it holds no state).
+    private static final class MatchFound extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MatchFound() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final MatchFound MATCH_FOUND = new MatchFound();
+
+    // URI of the object looked for.
+    private final String objectUri;
+    // URI of the predicate looked for (null: any predicate).
+    private final String predicateUri;
+
+
+    /**
+     * Creates a scanner.
+     * @param objectUri URI of the object looked for.
+     * @param predicateUri URI of the predicate looked for, or null for any predicate.
+     */
+    public RdfTripleScanner(String objectUri, String predicateUri) {
+        this.objectUri = objectUri;
+        this.predicateUri = predicateUri;
+    }
+
+    public String getObjectUri() {
+        return objectUri;
+    }
+
+    public String getPredicateUri() {
+        return predicateUri;
+    }
+
+    /**
+     * Reads an RDF document until a triple matches.
+     * @param in the document (it is not closed; if a triple matches, the rest is not read).
+     * @param lang the syntax of the document (e.g. Lang.RDFXML).
+     * @return true if a triple matches.
+     * @throws org.apache.jena.riot.RiotException if the document is not valid.
+     */
+    public boolean matches(InputStream in, Lang lang) {
+        try {
+            RDFDataMgr.parse(new StreamRDFBase() {
+                @Override
+                public void triple(Triple triple) {
+                    if (isMatch(triple)) {
+                        throw MATCH_FOUND;
+                    }
+                }
+            }, in, lang);
+            return false;
+        } catch (RuntimeException e) {
+            // The parser may wrap the exceptions thrown by the stream.
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof MatchFound) {
+                    return true;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Whether a triple has the object (and the predicate) looked for.
+     * @param triple the triple.
+     * @return true if the triple matches.
+     */
+    boolean isMatch(Triple triple) {
+        Node object = triple.getObject();
+        if (!object.isURI() || !this.objectUri.equals(object.getURI())) {
+            return false;
+        }
+        if (this.predicateUri == null) {
+            return true;
+        }
+        Node predicate = triple.getPredicate();
+        return predicate.isURI() && this.predicateUri.equals(predicate.getURI());
+    }
+}
@@ -0,0 +1,59 @@
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * @author csarasua
+ * Reader of the events of the recent changes stream of Wikimedia (EventStreams, stream "recentchange"), e.g.:
+ *      {"id": 2088802123, "type": "edit", "namespace": 0, "title": "Q20640474", "comment": "[[Property:P276]]: [[Q10313]]",
+ *       "timestamp": 1435939024, "user": "xxx", "bot": false, "length": {"old": 2200, "new": 2369},
+ *       "revision": {"old": 225922207, "new": 225922733}, "wiki": "wikidatawiki", ...}
+ * The events are small, so they are read as trees.
+ */
+public final class RecentChangeReader {
+
+    // Wiki of Wikidata in the events.
+    public static final String WIKIDATA = "wikidatawiki";
+
+    private RecentChangeReader() {
+    }
+
+    /**
+     * Reads an event as a contribution.
+     * @param json the data of the event.
+     * @param wiki the wiki whose edits are read (e.g. WIKIDATA).
+     * @return the contribution (without user id and page id, which the events do not give), or null if the event is
+     *         not an edit or a page creation in the wiki.
+     * @throws IOException if the event is not valid JSON.
+     */
+    public static Contribution read(String json, String wiki) throws IOException {
+
+        JsonNode event = WikidataJson.MAPPER.readTree(json);
+        if (event == null || !wiki.equals(event.path("wiki").asText())) {
+            return null;
+        }
+        String type = event.path("type").asText();
+        if (!type.equals("edit") && !type.equals("new")) {
+            return null;
+        }
+
+        JsonNode timestamp = event.get("timestamp");
+        return new Contribution(
+                -1,
+                text(event, "user"),
+                -1,
+                event.path("revision").path("new").asLong(-1),
+                event.path("revision").path("old").asLong(-1),
+                event.path("namespace").asInt(-1),
+                text(event, "title"),
+                timestamp != null && timestamp.canConvertToLong() ? Timestamps.format(timestamp.asLong()) : null,
+                text(event, "comment"),
+                event.path("length").path("new").asInt(-1));
+    }
+
+    // Text of a field (null if it is missing).
+    private static String text(JsonNode event, String field) {
+        JsonNode value = event.get(field);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+}
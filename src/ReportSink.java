@@ -0,0 +1,41 @@
+import java.io.IOException;
+
+/**
+ * @author csarasua
+ * Destination of the lines of a report. A sink keeps its file open during the whole analysis instead of opening and
+ * closing it for every written line.
+ */
+public interface ReportSink {
+
+    /**
+     * Writes a text in the report (without line separator).
+     * @param text the text to write.
+     * @throws IOException if the report could not be written.
+     */
+    void write(String text) throws IOException;
+
+    /**
+     * Writes a text in the report followed by the line separator.
+     * @param text the text to write.
+     * @throws IOException if the report could not be written.
+     */
+    void writeLine(String text) throws IOException;
+
+    /**
+     * Writes the line separator in the report.
+     * @throws IOException if the report could not be written.
+     */
+    void newLine() throws IOException;
+
+    /**
+     * Writes to disk everything written so far.
+     * @throws IOException if the report could not be written.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Writes to disk everything written so far and closes the report. Closing a closed sink has no effect.
+     * @throws IOException if the report could not be written.
+     */
+    void close() throws IOException;
+}
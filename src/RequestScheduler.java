@@ -0,0 +1,283 @@
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * @author csarasua
+ * Class to schedule all the requests to Wikidata, so that the analysis does not ask the API faster than allowed and
+ * waits before asking again when something went wrong.
+ * - All the requests take a token from one bucket shared by all the callers (requestsPerSecond, up to burst at once).
+ * - A request that fails (connection error, HTTP 429 or 5xx, or the "maxlag" error of the MediaWiki API) is sent
+ *   again after waiting the time given by the server (Retry-After) or, otherwise, an exponential time with jitter
+ *   (a random time between 0 and baseDelayMillis * 2^attempt, at most maxDelayMillis).
+ * - Each request is sent at most maxAttempts times; then the last error is thrown (RetriesExhaustedException).
+ * Every attempt is recorded in the run metrics (RunMetrics: duration, retries, errors and bytes received).
+ * Requests to the API should carry the maxlag parameter (see getMaxLag), so that the API refuses them while its
+ * database replicas lag behind instead of making the lag worse.
+ * The requests are sent through the shared transport (WikidataTransport.getShared), which is asked for at every
+ * request, so the scheduler never keeps a transport that was replaced or shut down.
+ * The scheduler can be used by several threads at the same time.
+ */
+public class RequestScheduler {
+
+    // Default configuration.
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+    public static final int DEFAULT_BURST = 10;
+    public static final int DEFAULT_MAX_ATTEMPTS = 6;
+    public static final long DEFAULT_BASE_DELAY = 500;
+    public static final long DEFAULT_MAX_DELAY = 60000;
+    public static final int DEFAULT_MAX_LAG = 5;
+
+    /**
+     * Exception thrown when a request failed every time it was sent.
+     */
+    public static class RetriesExhaustedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RetriesExhaustedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    // Scheduler shared by all the callers.
+    private static RequestScheduler shared;
+
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxLag;
+
+    // Bucket of tokens: tokens available and when they were last counted.
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private final Random random = new Random();
+
+
+    /**
+     * Creates a scheduler.
+     * @param requestsPerSecond maximum average number of requests per second.
+     * @param burst maximum number of requests sent at once after a pause.
+     * @param maxAttempts maximum number of times a request is sent.
+     * @param baseDelayMillis waiting time (ms) after the first failure, doubled after every failure.
+     * @param maxDelayMillis maximum waiting time (ms) between two attempts.
+     * @param maxLag value of the maxlag parameter (seconds) of the requests to the API.
+     */
+    public RequestScheduler(double requestsPerSecond, int burst, int maxAttempts, long baseDelayMillis, long maxDelayMillis, int maxLag) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxLag = maxLag;
+        this.tokens = burst;
+    }
+
+    /**
+     * Gets the scheduler shared by all the callers (created with the default configuration if it was not configured).
+     * @return the shared scheduler.
+     */
+    public static synchronized RequestScheduler getShared() {
+        if (shared == null) {
+            shared = new RequestScheduler(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_LAG);
+        }
+        return shared;
+    }
+
+    /**
+     * Replaces the shared scheduler by one with the given configuration. It has to be called before the analysis starts.
+     */
+    public static synchronized void configure(double requestsPerSecond, int burst, int maxAttempts, long baseDelayMillis, long maxDelayMillis, int maxLag) {
+        shared = new RequestScheduler(requestsPerSecond, burst, maxAttempts, baseDelayMillis, maxDelayMillis, maxLag);
+    }
+
+    /**
+     * Gets the transport through which the requests are sent (the shared transport).
+     * @return the transport.
+     */
+    public WikidataTransport getTransport() {
+        return WikidataTransport.getShared();
+    }
+
+    public int getMaxLag() {
+        return maxLag;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Executes a request, sending it again (after waiting) while it fails and the retry budget allows it.
+     * @param request the HTTP request (a request without entity, e.g. GET, so that it can be sent again).
+     * @return the response (HTTP 200), whose entity has to be released with getTransport().release.
+     * @throws RetriesExhaustedException if the request failed every time it was sent.
+     * @throws IOException if the server answered with an error that does not change by asking again (e.g. HTTP 404).
+     */
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+
+        IOException lastFailure = null;
+        RunMetrics metrics = RunMetrics.getShared();
+        WikidataTransport transport = getTransport();
+
+        for (int attempt = 0; attempt < this.maxAttempts; attempt++) {
+
+            acquire();
+            if (attempt > 0) {
+                metrics.addRetry();
+            }
+
+            // Waiting time asked by the server (ms), if any.
+            long retryAfter = -1;
+
+            HttpResponse response = null;
+            long started = metrics.start();
+            try {
+                response = transport.execute(request);
+            } catch (InterruptedIOException e) {
+                // Timeouts are worth another attempt; an interrupted thread is not.
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                metrics.addError("timeout");
+                lastFailure = e;
+            } catch (IOException e) {
+                // Connection error (e.g. Internet broke).
+                metrics.addError("connection");
+                lastFailure = e;
+            } finally {
+                metrics.stop(RunMetrics.HTTP_REQUEST, started);
+            }
+
+            if (response != null) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                Header apiError = response.getFirstHeader("MediaWiki-API-Error");
+                boolean lagged = apiError != null && "maxlag".equals(apiError.getValue());
+
+                if (statusCode == 200 && !lagged) {
+                    countBytesReceived(response);
+                    return response;
+                }
+                metrics.addError(lagged ? "maxlag" : String.valueOf(statusCode));
+
+                retryAfter = parseRetryAfter(response.getFirstHeader("Retry-After"));
+                transport.release(response);
+
+                if (!lagged && !isRetryable(statusCode)) {
+                    throw new IOException("The server answered with HTTP status " + statusCode + " to " + request.getURI());
+                }
+                lastFailure = new IOException((lagged ? "The API is lagged (maxlag)" : "The server answered with HTTP status " + statusCode) + " to " + request.getURI());
+            }
+
+            if (attempt + 1 < this.maxAttempts) {
+                sleep(retryAfter >= 0 ? Math.min(retryAfter, this.maxDelayMillis) : backoff(attempt));
+            }
+        }
+
+        throw new RetriesExhaustedException("Request failed " + this.maxAttempts + " times: " + request.getURI(), lastFailure);
+    }
+
+    /**
+     * Counts the bytes of the body of a response as they are read (see RunMetrics.countBytesReceived).
+     */
+    private static void countBytesReceived(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new HttpEntityWrapper(entity) {
+                @Override
+                public InputStream getContent() throws IOException {
+                    return RunMetrics.getShared().countBytesReceived(super.getContent());
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the waiting time before an attempt: a random time between 0 and baseDelayMillis * 2^attempt (at most maxDelayMillis).
+     * @param attempt number of failed attempts minus 1 (0 after the first failure).
+     * @return the waiting time (ms).
+     */
+    public long backoff(int attempt) {
+        long cap = this.baseDelayMillis << Math.min(attempt, 30);
+        if (cap <= 0 || cap > this.maxDelayMillis) {
+            cap = this.maxDelayMillis;
+        }
+        synchronized (this.random) {
+            return (long) (this.random.nextDouble() * cap);
+        }
+    }
+
+    /**
+     * Waits (without spinning) until the shared bucket has a token and takes it.
+     * @throws InterruptedIOException if the thread was interrupted while waiting.
+     */
+    public void acquire() throws InterruptedIOException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefill) / 1e9 * this.requestsPerSecond);
+            this.lastRefill = now;
+            // The token is taken now (the bucket may go below 0); the caller waits until it would have been there.
+            this.tokens = this.tokens - 1;
+            wait = this.tokens >= 0 ? 0 : (long) Math.ceil(-this.tokens / this.requestsPerSecond * 1000);
+        }
+        sleep(wait);
+    }
+
+    /**
+     * Waits some time.
+     * @param millis the waiting time (ms).
+     * @throws InterruptedIOException if the thread was interrupted while waiting.
+     */
+    public static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request");
+        }
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Reads the Retry-After header: a number of seconds or an HTTP date.
+     * @return the waiting time (ms), or -1 if there is no (valid) header.
+     */
+    private static long parseRetryAfter(Header header) {
+        if (header == null) {
+            return -1;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds: it may be a date.
+        }
+        try {
+            SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            Date date = httpDate.parse(value);
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author csarasua
+ * Local copy of the responses of the Wikidata API, so that an analysis can be repeated without asking the API again.
+ * Every response is stored gzip-compressed in a file named after the SHA-1 of its key (e.g. the user, the period of
+ * time and the continuation token of a page of contributions): <directory>/<first 2 hex digits>/<hash>.gz
+ * In OFFLINE mode the API is never called: a response that is not in the cache is an error (CacheMissException).
+ * The cache can be used by several threads at the same time.
+ */
+public class ResponseCache {
+
+    /**
+     * How the cache is used.
+     */
+    public enum Mode {
+        // Responses are read from the cache and, if they are not there, asked to the API and stored.
+        READ_WRITE,
+        // Responses are only read from the cache.
+        OFFLINE
+    }
+
+    /**
+     * Exception thrown in OFFLINE mode when a response is not in the cache.
+     */
+    public static class CacheMissException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CacheMissException(String key) {
+            super("Response not found in the cache (offline mode): " + key);
+        }
+    }
+
+    private final File directory;
+    private final Mode mode;
+
+
+    /**
+     * Creates a cache.
+     * @param directory directory where the responses are stored (created if it does not exist).
+     * @param mode how the cache is used.
+     */
+    public ResponseCache(File directory, Mode mode) {
+        this.directory = directory;
+        this.mode = mode;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isOffline() {
+        return this.mode == Mode.OFFLINE;
+    }
+
+    /**
+     * Opens a stored response.
+     * @param key the key of the response.
+     * @return the (decompressed) body of the response, or null if it is not in the cache.
+     * @throws IOException if the response is in the cache but could not be opened.
+     */
+    public InputStream open(String key) throws IOException {
+        File file = fileOf(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        return new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    /**
+     * Opens a stored response, failing if it is not in the cache.
+     * @param key the key of the response.
+     * @return the (decompressed) body of the response.
+     * @throws CacheMissException if the response is not in the cache.
+     * @throws IOException if the response could not be opened.
+     */
+    public InputStream openExisting(String key) throws IOException {
+        InputStream in = open(key);
+        if (in == null) {
+            throw new CacheMissException(key);
+        }
+        return in;
+    }
+
+    /**
+     * Stores a response, replacing the previous one with the same key.
+     * The response is written in a temporary file and then moved, so a stored response is never seen half written.
+     * @param key the key of the response.
+     * @param body the body of the response.
+     * @throws IOException if the response could not be stored.
+     */
+    public void store(String key, byte[] body) throws IOException {
+        File file = fileOf(key);
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("The cache directory " + parent + " could not be created");
+        }
+
+        File temporary = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(temporary));
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            java.nio.file.Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    /**
+     * Gets the file of a response: the hexadecimal SHA-1 of the key, in a subdirectory named after its first 2 digits.
+     */
+    private File fileOf(String key) {
+        String hash = sha1(key);
+        return new File(new File(this.directory, hash.substring(0, 2)), hash + ".gz");
+    }
+
+    private static String sha1(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Streaming reader of the responses of the action:query / prop:revisions option of the Wikidata API asked for given
+ * revisions (revids, with rvprop=ids|size), used to get the size of many revisions with one request.
+ * Revisions that do not exist (or were deleted) are in "badrevids", and revisions whose size is hidden have no size:
+ * neither of them is read.
+ *
+ * Shape of API response:
+ * {
+ *  "batchcomplete": "",
+ *  "query": {
+ *    "badrevids": {"999999999999": {"revid": 999999999999, "missing": ""}},
+ *    "pages": {
+ *      "22387768": {"pageid": 22387768, "ns": 0, "title": "Q20640474",
+ *                   "revisions": [{"revid": 225922733, "parentid": 225922412, "size": 2369}, ...]}, ....
+ */
+public final class RevisionSizeReader {
+
+    private RevisionSizeReader() {
+    }
+
+    /**
+     * Reads the size of every revision of a response.
+     * @param in the body of the response (it is not closed).
+     * @param sizes map to which the size of every revision is added (bytes of the page after the revision), by revision id.
+     * @throws IOException if the response could not be read or the API answered with an error.
+     */
+    public static void readSizes(InputStream in, final Map<Long, Integer> sizes) throws IOException {
+
+        WikidataJson.readResponse(in, new WikidataJson.MemberReader() {
+            public boolean readMember(String name, JsonToken value, JsonParser parser) throws IOException {
+                if (name.equals("query") && value == JsonToken.START_OBJECT) {
+                    readQuery(parser, sizes);
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    // Reads the "query" object (the parser is at its START_OBJECT).
+    private static void readQuery(JsonParser parser, Map<Long, Integer> sizes) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (name.equals("pages") && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readPage(parser, sizes);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // Reads one page (the parser is at its START_OBJECT).
+    private static void readPage(JsonParser parser, Map<Long, Integer> sizes) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals("revisions") && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readRevision(parser, sizes);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // Reads one revision (the parser is at its START_OBJECT).
+    private static void readRevision(JsonParser parser, Map<Long, Integer> sizes) throws IOException {
+        long revId = -1;
+        int size = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals("revid") && value == JsonToken.VALUE_NUMBER_INT) {
+                revId = parser.getLongValue();
+            } else if (name.equals("size") && value == JsonToken.VALUE_NUMBER_INT) {
+                size = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (revId > 0 && size >= 0) {
+            sizes.put(revId, size);
+        }
+    }
+}
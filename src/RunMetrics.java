@@ -0,0 +1,343 @@
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author csarasua
+ * Metrics of a run, to see where the time goes: durations of every stage (LatencyHistogram), bytes received from
+ * Wikidata, contributions read (and per second), retries and errors of the requests (by HTTP status or cause).
+ * The stages are timed by the code of the analysis:
+ *     long started = RunMetrics.getShared().start();
+ *     ... stage ...
+ *     RunMetrics.getShared().stop(RunMetrics.JSON_PARSE, started);
+ * The metrics are written at the end of the run (see writeTo) and, during long runs, every few seconds (see
+ * startSnapshots), in the text format of Prometheus or, if the file name ends with ".json", in JSON.
+ * Recording only increments counters (without locks), so the metrics can always be on. When they are disabled
+ * (setEnabled), nothing is recorded.
+ * The metrics can be used by several threads at the same time.
+ */
+public class RunMetrics {
+
+    // Stages of the run.
+    public static final String HTTP_REQUEST = "http_request";
+    public static final String USERCONTRIBS_PAGE = "usercontribs_page";
+    public static final String JSON_PARSE = "json_parse";
+    public static final String PAGE_PROCESSING = "page_processing";
+    public static final String REPORT_IO = "report_io";
+    public static final String JOURNAL = "journal";
+    public static final String ITEM_LOOKUP_BATCH = "item_lookup_batch";
+    public static final String ITEM_REVISIONS_BATCH = "item_revisions_batch";
+    public static final String REVISION_SIZES_BATCH = "revision_sizes_batch";
+    public static final String RDF_SCAN = "rdf_scan";
+    public static final String GLOBAL_REPORTS = "global_reports";
+
+    // Metrics shared by all the callers.
+    private static final RunMetrics shared = new RunMetrics();
+
+    private volatile boolean enabled = true;
+    private volatile long startedAt = System.nanoTime();
+
+    private final ConcurrentMap<String, LatencyHistogram> stages = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong contributions = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+    // Writer of the snapshots (null if there are no snapshots).
+    private ScheduledExecutorService snapshots;
+
+
+    /**
+     * Gets the metrics shared by all the callers.
+     */
+    public static RunMetrics getShared() {
+        return shared;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts the timing of a stage.
+     * @return the current time (nanoseconds), to give to stop; 0 if the metrics are disabled.
+     */
+    public long start() {
+        return this.enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Ends the timing of a stage and records its duration.
+     * @param stage the stage (e.g. JSON_PARSE).
+     * @param started the time given by start.
+     */
+    public void stop(String stage, long started) {
+        if (this.enabled && started != 0) {
+            record(stage, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Records the duration of a stage.
+     * @param stage the stage (e.g. JSON_PARSE).
+     * @param nanos the duration (nanoseconds).
+     */
+    public void record(String stage, long nanos) {
+        if (!this.enabled) {
+            return;
+        }
+        LatencyHistogram histogram = this.stages.get(stage);
+        if (histogram == null) {
+            this.stages.putIfAbsent(stage, new LatencyHistogram());
+            histogram = this.stages.get(stage);
+        }
+        histogram.record(nanos);
+    }
+
+    public void addBytesReceived(long bytes) {
+        if (this.enabled) {
+            this.bytesReceived.addAndGet(bytes);
+        }
+    }
+
+    public void addContributions(int count) {
+        if (this.enabled) {
+            this.contributions.addAndGet(count);
+        }
+    }
+
+    public void addRetry() {
+        if (this.enabled) {
+            this.retries.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a failed request.
+     * @param cause the HTTP status code (e.g. "503") or the cause of the failure (e.g. "maxlag", "connection").
+     */
+    public void addError(String cause) {
+        if (!this.enabled) {
+            return;
+        }
+        AtomicLong count = this.errors.get(cause);
+        if (count == null) {
+            this.errors.putIfAbsent(cause, new AtomicLong());
+            count = this.errors.get(cause);
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Wraps a stream so that the bytes read from it are counted as received.
+     * @param in the stream (e.g. the body of a response).
+     * @return the counting stream.
+     */
+    public InputStream countBytesReceived(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    addBytesReceived(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    addBytesReceived(read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                addBytesReceived(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * Starts the metrics again (at the beginning of a run).
+     */
+    public void reset() {
+        this.stages.clear();
+        this.bytesReceived.set(0);
+        this.contributions.set(0);
+        this.retries.set(0);
+        this.errors.clear();
+        this.startedAt = System.nanoTime();
+    }
+
+    /**
+     * Writes the metrics every some time in a file, until stopSnapshots.
+     * @param file the file (Prometheus text, or JSON if its name ends with ".json"), replaced by every snapshot.
+     * @param intervalMillis time between two snapshots (ms).
+     */
+    public synchronized void startSnapshots(final File file, long intervalMillis) {
+        stopSnapshots();
+        this.snapshots = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metrics-snapshots");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.snapshots.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    writeTo(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops writing snapshots (see startSnapshots).
+     */
+    public synchronized void stopSnapshots() {
+        if (this.snapshots != null) {
+            this.snapshots.shutdownNow();
+            this.snapshots = null;
+        }
+    }
+
+    /**
+     * Writes the metrics in a file (written first next to it and then renamed, so the file is always complete).
+     * @param file the file (Prometheus text, or JSON if its name ends with ".json").
+     * @throws IOException if the file could not be written.
+     */
+    public synchronized void writeTo(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temporary);
+        try {
+            if (file.getName().endsWith(".json")) {
+                writeJson(out);
+            } else {
+                writePrometheus(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            // Some systems do not rename over an existing file.
+            file.delete();
+            if (!temporary.renameTo(file)) {
+                throw new IOException("The metrics could not be written in " + file);
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics in the text format of Prometheus.
+     */
+    private void writePrometheus(FileOutputStream out) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
+        double elapsed = elapsedSeconds();
+
+        writer.println("# TYPE dss_run_seconds gauge");
+        writer.println("dss_run_seconds " + elapsed);
+        writer.println("# TYPE dss_bytes_received_total counter");
+        writer.println("dss_bytes_received_total " + this.bytesReceived.get());
+        writer.println("# TYPE dss_contributions_total counter");
+        writer.println("dss_contributions_total " + this.contributions.get());
+        writer.println("# TYPE dss_contributions_per_second gauge");
+        writer.println("dss_contributions_per_second " + contributionsPerSecond(elapsed));
+        writer.println("# TYPE dss_request_retries_total counter");
+        writer.println("dss_request_retries_total " + this.retries.get());
+        writer.println("# TYPE dss_request_errors_total counter");
+        for (Map.Entry<String, AtomicLong> error : new TreeMap<String, AtomicLong>(this.errors).entrySet()) {
+            writer.println("dss_request_errors_total{cause=\"" + error.getKey() + "\"} " + error.getValue().get());
+        }
+
+        writer.println("# TYPE dss_stage_seconds histogram");
+        for (Map.Entry<String, LatencyHistogram> stage : new TreeMap<String, LatencyHistogram>(this.stages).entrySet()) {
+            LatencyHistogram histogram = stage.getValue();
+            String name = stage.getKey();
+            long cumulative = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++) {
+                cumulative = cumulative + histogram.getBucketCount(i);
+                writer.println("dss_stage_seconds_bucket{stage=\"" + name + "\",le=\"" + LatencyHistogram.getBucketBoundMicros(i) / 1e6 + "\"} " + cumulative);
+            }
+            cumulative = cumulative + histogram.getBucketCount(LatencyHistogram.BUCKETS - 1);
+            writer.println("dss_stage_seconds_bucket{stage=\"" + name + "\",le=\"+Inf\"} " + cumulative);
+            writer.println("dss_stage_seconds_sum{stage=\"" + name + "\"} " + histogram.getSumNanos() / 1e9);
+            writer.println("dss_stage_seconds_count{stage=\"" + name + "\"} " + histogram.getCount());
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the metrics in JSON.
+     */
+    private void writeJson(FileOutputStream out) throws IOException {
+        JsonGenerator json = WikidataJson.FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+        double elapsed = elapsedSeconds();
+
+        json.writeStartObject();
+        json.writeNumberField("runSeconds", elapsed);
+        json.writeNumberField("bytesReceived", this.bytesReceived.get());
+        json.writeNumberField("contributions", this.contributions.get());
+        json.writeNumberField("contributionsPerSecond", contributionsPerSecond(elapsed));
+        json.writeNumberField("retries", this.retries.get());
+
+        json.writeObjectFieldStart("errors");
+        for (Map.Entry<String, AtomicLong> error : new TreeMap<String, AtomicLong>(this.errors).entrySet()) {
+            json.writeNumberField(error.getKey(), error.getValue().get());
+        }
+        json.writeEndObject();
+
+        json.writeObjectFieldStart("stages");
+        for (Map.Entry<String, LatencyHistogram> stage : new TreeMap<String, LatencyHistogram>(this.stages).entrySet()) {
+            LatencyHistogram histogram = stage.getValue();
+            json.writeObjectFieldStart(stage.getKey());
+            json.writeNumberField("count", histogram.getCount());
+            json.writeNumberField("totalMillis", histogram.getSumNanos() / 1e6);
+            json.writeNumberField("meanMicros", histogram.getCount() > 0 ? histogram.getSumNanos() / 1e3 / histogram.getCount() : 0);
+            json.writeNumberField("p50Micros", histogram.getQuantileMicros(0.5));
+            json.writeNumberField("p90Micros", histogram.getQuantileMicros(0.9));
+            json.writeNumberField("p99Micros", histogram.getQuantileMicros(0.99));
+            json.writeNumberField("maxMicros", histogram.getMaxNanos() / 1000);
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+
+        json.writeEndObject();
+        json.flush();
+    }
+
+    private double elapsedSeconds() {
+        return (System.nanoTime() - this.startedAt) / 1e9;
+    }
+
+    private double contributionsPerSecond(double elapsed) {
+        return elapsed > 0 ? this.contributions.get() / elapsed : 0;
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * @author csarasua
+ * Reader of a stream of server-sent events (text/event-stream), as sent by the EventStreams service of Wikimedia.
+ * Every event is a group of lines "field: value" ended by an empty line; the lines starting with ":" are comments
+ * (e.g. to keep the connection open). The "data" lines of an event are joined with line breaks.
+ * Objects of this class are not thread-safe.
+ */
+public class SseEventReader {
+
+    /**
+     * One event of the stream.
+     */
+    public static class Event {
+        final String id;
+        final String type;
+        final String data;
+
+        public Event(String id, String type, String data) {
+            this.id = id;
+            this.type = type;
+            this.data = data;
+        }
+
+        // Id of the event (null if it has none), to ask for the events after it when connecting again (Last-Event-ID).
+        public String getId() {
+            return id;
+        }
+
+        // Type of the event ("message" if it has none).
+        public String getType() {
+            return type;
+        }
+
+        public String getData() {
+            return data;
+        }
+    }
+
+    private final BufferedReader reader;
+
+
+    /**
+     * Creates a reader.
+     * @param in the stream of events (it is closed by close).
+     */
+    public SseEventReader(InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Reads the next event (waiting until it arrives).
+     * @return the event, or null if the stream ended.
+     * @throws IOException if the stream could not be read.
+     */
+    public Event next() throws IOException {
+
+        String id = null;
+        String type = null;
+        StringBuilder data = null;
+
+        String line;
+        while ((line = this.reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data != null) {
+                    return new Event(id, type != null ? type : "message", data.toString());
+                }
+                // Event without data: it is not given (as in the browsers).
+                id = null;
+                type = null;
+                continue;
+            }
+            if (line.startsWith(":")) {
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            String field = colon >= 0 ? line.substring(0, colon) : line;
+            String value = colon >= 0 ? line.substring(colon + 1) : "";
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+
+            if (field.equals("data")) {
+                if (data == null) {
+                    data = new StringBuilder(value);
+                } else {
+                    data.append('\n').append(value);
+                }
+            } else if (field.equals("id")) {
+                id = value;
+            } else if (field.equals("event")) {
+                type = value;
+            }
+        }
+        // The last event is only given if it was ended by an empty line.
+        return null;
+    }
+
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
@@ -0,0 +1,119 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author csarasua
+ * Local stand-in of the recent changes stream, to try the live mode of DSSWEAnalyzer (processLive) without
+ * Wikimedia: an HTTP server that sends the events of a recorded stream (a text/event-stream file, e.g. saved with
+ * curl https://stream.wikimedia.org/v2/stream/recentchange) once, in order, and closes the stream.
+ * The events are numbered (id 1, 2...), and a client connecting again with Last-Event-ID gets the events after it.
+ */
+public class SseReplayServer {
+
+    private final List<SseEventReader.Event> events = new ArrayList<SseEventReader.Event>();
+    private final HttpServer server;
+    // Waiting time between two events (ms).
+    private final long delayMillis;
+
+
+    /**
+     * Creates the server (started by start).
+     * @param recordedFeed the recorded stream.
+     * @param port the local port (0: any free port).
+     * @param delayMillis waiting time between two events (ms).
+     * @throws IOException if the recorded stream could not be read or the port could not be used.
+     */
+    public SseReplayServer(File recordedFeed, int port, long delayMillis) throws IOException {
+        this.delayMillis = delayMillis;
+
+        SseEventReader reader = new SseEventReader(new FileInputStream(recordedFeed));
+        try {
+            SseEventReader.Event event;
+            while ((event = reader.next()) != null) {
+                this.events.add(event);
+            }
+        } finally {
+            reader.close();
+        }
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                replay(exchange);
+            }
+        });
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+    }
+
+    /**
+     * Gets the URL of the stream.
+     */
+    public String getUrl() {
+        return "http://localhost:" + this.server.getAddress().getPort() + "/";
+    }
+
+    public int getEventCount() {
+        return this.events.size();
+    }
+
+    private void replay(HttpExchange exchange) throws IOException {
+
+        // Events already received by the client.
+        int first = 0;
+        String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (lastEventId != null) {
+            try {
+                first = Math.max(0, Integer.parseInt(lastEventId.trim()));
+            } catch (NumberFormatException e) {
+                // Not an id of this server: the whole stream is sent.
+            }
+        }
+
+        InputStream request = exchange.getRequestBody();
+        request.close();
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            for (int i = first; i < this.events.size(); i++) {
+                SseEventReader.Event event = this.events.get(i);
+                StringBuilder text = new StringBuilder();
+                text.append("event: ").append(event.getType()).append('\n');
+                text.append("id: ").append(i + 1).append('\n');
+                for (String line : event.getData().split("\n", -1)) {
+                    text.append("data: ").append(line).append('\n');
+                }
+                text.append('\n');
+                out.write(text.toString().getBytes("UTF-8"));
+                out.flush();
+                if (this.delayMillis > 0) {
+                    Thread.sleep(this.delayMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client closed the connection.
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author csarasua
+ * Dictionary of a text column of the ContributionStore: every distinct value gets a number (its id, the order in which
+ * it was added), and the column keeps the ids.
+ * The file of the dictionary is the list of the values (DataOutput.writeUTF) in the order of their ids. New values are
+ * only appended, so a dictionary written by an interrupted run is read up to its last complete value.
+ * Objects of this class are not thread-safe.
+ */
+class StoreDictionary {
+
+    private final List<String> values = new ArrayList<String>();
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    // Where the new values are appended (null for read-only dictionaries).
+    private DataOutputStream out;
+
+
+    /**
+     * Reads the dictionary of a file (empty if the file does not exist).
+     * @param file the file of the dictionary.
+     * @param writable true to append new values to the file (the file is cut after its last complete value).
+     * @throws IOException if the file could not be read.
+     */
+    StoreDictionary(File file, boolean writable) throws IOException {
+
+        long validLength = 0;
+        if (file.isFile()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (true) {
+                    String value = in.readUTF();
+                    this.ids.put(value, this.values.size());
+                    this.values.add(value);
+                    validLength = validLength + 2 + utfLength(value);
+                }
+            } catch (EOFException e) {
+                // End of the file (or a value half written).
+            } finally {
+                in.close();
+            }
+        }
+
+        if (writable) {
+            RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+            try {
+                truncate.setLength(validLength);
+            } finally {
+                truncate.close();
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+    }
+
+    /**
+     * Gets the id of a value, adding it if it is new.
+     * @param value the value.
+     * @return the id of the value.
+     * @throws IOException if the new value could not be written.
+     */
+    int idOf(String value) throws IOException {
+        Integer id = this.ids.get(value);
+        if (id == null) {
+            id = this.values.size();
+            this.out.writeUTF(value);
+            this.ids.put(value, id);
+            this.values.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the id of a value without adding it.
+     * @param value the value.
+     * @return the id of the value, or -1 if it is not in the dictionary.
+     */
+    int find(String value) {
+        Integer id = this.ids.get(value);
+        return id != null ? id : -1;
+    }
+
+    String valueOf(int id) {
+        return this.values.get(id);
+    }
+
+    int size() {
+        return this.values.size();
+    }
+
+    void flush() throws IOException {
+        if (this.out != null) {
+            this.out.flush();
+        }
+    }
+
+    void close() throws IOException {
+        if (this.out != null) {
+            this.out.close();
+            this.out = null;
+        }
+    }
+
+    // Number of bytes of a value in modified UTF-8 (as written by writeUTF, without its 2 bytes of length).
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length = length + 1;
+            } else if (c > 0x07FF) {
+                length = length + 3;
+            } else {
+                length = length + 2;
+            }
+        }
+        return length;
+    }
+}
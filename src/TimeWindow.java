@@ -0,0 +1,78 @@
+/**
+ * @author csarasua
+ * Named period of time analyzed by a DSSWEAnalyzer, with the reports written for it.
+ * Both the start and the end are included, as in the list:usercontribs option of the Wikidata API.
+ * Objects of this class are immutable.
+ */
+public class TimeWindow {
+
+    private final String name;
+    private final String start;
+    private final String end;
+    private final long startEpoch;
+    private final long endEpoch;
+
+    // Paths (relative to the working directory) of the report of contributions and of the global report.
+    private final String reportFilePath;
+    private final String globalReportFilePath;
+
+
+    /**
+     * Creates a window.
+     * @param name name of the window (e.g. "editathon").
+     * @param start when the window starts (yyyy-MM-ddTHH:mm:ssZ).
+     * @param end when the window ends (yyyy-MM-ddTHH:mm:ssZ).
+     * @param reportFilePath path of the file containing the concrete contributions of participants in the window.
+     * @param globalReportFilePath path of the file containing the global overview of the window.
+     * @throws IllegalArgumentException if start or end are not valid timestamps or the window ends before it starts.
+     */
+    public TimeWindow(String name, String start, String end, String reportFilePath, String globalReportFilePath) {
+        this.name = name;
+        this.start = start;
+        this.end = end;
+        this.startEpoch = Timestamps.parse(start);
+        this.endEpoch = Timestamps.parse(end);
+        if (this.endEpoch < this.startEpoch) {
+            throw new IllegalArgumentException("The window " + name + " ends before it starts");
+        }
+        this.reportFilePath = reportFilePath;
+        this.globalReportFilePath = globalReportFilePath;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getStart() {
+        return start;
+    }
+
+    public String getEnd() {
+        return end;
+    }
+
+    public long getStartEpoch() {
+        return startEpoch;
+    }
+
+    public long getEndEpoch() {
+        return endEpoch;
+    }
+
+    public String getReportFilePath() {
+        return reportFilePath;
+    }
+
+    public String getGlobalReportFilePath() {
+        return globalReportFilePath;
+    }
+
+    /**
+     * Whether a moment is in the window.
+     * @param epochSeconds the moment, in seconds since the epoch.
+     * @return true if the moment is between the start and the end (both included).
+     */
+    public boolean contains(long epochSeconds) {
+        return epochSeconds >= this.startEpoch && epochSeconds <= this.endEpoch;
+    }
+}
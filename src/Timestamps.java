@@ -0,0 +1,110 @@
+/**
+ * @author csarasua
+ * Conversion of the timestamps of the Wikidata API ("2015-07-03T15:57:04Z", always UTC) to seconds since the epoch,
+ * and back (format).
+ * The timestamps are read digit by digit, without SimpleDateFormat or Calendar, because every contribution has one.
+ */
+public final class Timestamps {
+
+    private Timestamps() {
+    }
+
+    /**
+     * Converts a timestamp to seconds since 1970-01-01T00:00:00Z.
+     * @param timestamp timestamp of the shape yyyy-MM-ddTHH:mm:ssZ (it may be null).
+     * @return the seconds since the epoch, or -1 if the timestamp is null or does not have that shape.
+     */
+    public static long toEpochSeconds(String timestamp) {
+        if (timestamp == null || timestamp.length() != 20 || timestamp.charAt(4) != '-' || timestamp.charAt(7) != '-'
+                || timestamp.charAt(10) != 'T' || timestamp.charAt(13) != ':' || timestamp.charAt(16) != ':' || timestamp.charAt(19) != 'Z') {
+            return -1;
+        }
+        int year = digits(timestamp, 0, 4);
+        int month = digits(timestamp, 5, 2);
+        int day = digits(timestamp, 8, 2);
+        int hour = digits(timestamp, 11, 2);
+        int minute = digits(timestamp, 14, 2);
+        int second = digits(timestamp, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return -1;
+        }
+        return daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Converts a timestamp to seconds since the epoch, failing if it is not valid (e.g. for the periods given by the user).
+     * @param timestamp timestamp of the shape yyyy-MM-ddTHH:mm:ssZ.
+     * @return the seconds since the epoch.
+     * @throws IllegalArgumentException if the timestamp is not valid.
+     */
+    public static long parse(String timestamp) {
+        long seconds = toEpochSeconds(timestamp);
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Not a timestamp of the shape yyyy-MM-ddTHH:mm:ssZ: " + timestamp);
+        }
+        return seconds;
+    }
+
+    /**
+     * Converts seconds since the epoch to a timestamp (e.g. for the events of the recent changes stream, which only
+     * give the seconds).
+     * @param epochSeconds seconds since 1970-01-01T00:00:00Z (not negative).
+     * @return the timestamp, of the shape yyyy-MM-ddTHH:mm:ssZ.
+     */
+    public static String format(long epochSeconds) {
+        long days = epochSeconds / 86400;
+        int secondOfDay = (int) (epochSeconds % 86400);
+
+        // Inverse of daysFromCivil.
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder timestamp = new StringBuilder(20);
+        pad(timestamp, year, 4).append('-');
+        pad(timestamp, month, 2).append('-');
+        pad(timestamp, day, 2).append('T');
+        pad(timestamp, secondOfDay / 3600, 2).append(':');
+        pad(timestamp, secondOfDay / 60 % 60, 2).append(':');
+        pad(timestamp, secondOfDay % 60, 2).append('Z');
+        return timestamp.toString();
+    }
+
+    // Appends a number with leading zeros.
+    private static StringBuilder pad(StringBuilder text, long value, int width) {
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            text.append('0');
+        }
+        return text.append(digits);
+    }
+
+    // Reads a number of decimal digits (-1 if a character is not a digit).
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Number of days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
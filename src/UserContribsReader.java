@@ -0,0 +1,139 @@
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * @author csarasua
+ * Streaming reader of the responses of the action:query / list:usercontribs option of the Wikidata API.
+ * The contributions are read token by token into Contribution objects; every other property of the response is
+ * skipped without building it in memory.
+ *
+ * Shape of API response:
+ * {
+ *  "batchcomplete": "",
+ *  "continue": {"uccontinue": "20150703155704|225922733", "continue": "-||"},
+ *  "query": {
+ *    "usercontribs": [
+ *      {"userid": 2088802, "user": "xxx", "pageid": 22387768, "revid": 225922733, "parentid": 225922207, "ns": 0,
+ *       "title": "Q20640474", "timestamp": "2015-07-03T15:57:04Z", "top": "", "comment": "[[Property:P276]]: [[Q10313]]",
+ *       "size": 2369}, ....
+ */
+public final class UserContribsReader {
+
+    private UserContribsReader() {
+    }
+
+    /**
+     * Reads one page of contributions.
+     * @param in the body of the response (it is not closed).
+     * @param contributions list to which the contributions of the page are added (in the order of the response).
+     * @return the continuation token of the next page, or null if this was the last page.
+     * @throws IOException if the response could not be read or the API answered with an error.
+     */
+    public static String readPage(InputStream in, final List<Contribution> contributions) throws IOException {
+
+        // Continuation token read from the response (null if there is none).
+        final String[] continueToken = new String[1];
+
+        WikidataJson.readResponse(in, new WikidataJson.MemberReader() {
+            public boolean readMember(String name, JsonToken value, JsonParser parser) throws IOException {
+                if (name.equals("query") && value == JsonToken.START_OBJECT) {
+                    readQuery(parser, contributions);
+                    return true;
+                } else if (name.equals("continue") && value == JsonToken.START_OBJECT) {
+                    continueToken[0] = readContinue(parser);
+                    return true;
+                }
+                return false;
+            }
+        });
+
+        return continueToken[0];
+    }
+
+    // Reads the "query" object (the parser is at its START_OBJECT).
+    private static void readQuery(JsonParser parser, List<Contribution> contributions) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            // Reads the contributions
+            if (name.equals("usercontribs") && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    contributions.add(readContribution(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // Reads one contribution (the parser is at its START_OBJECT).
+    private static Contribution readContribution(JsonParser parser) throws IOException {
+
+        long userId = -1;
+        String user = null;
+        long pageId = -1;
+        long revId = -1;
+        long parentId = -1;
+        int ns = -1;
+        String title = null;
+        String timestamp = null;
+        String comment = null;
+        int size = -1;
+
+        //Read one complete contribution: get the user id, user name, pageid, revid, parentid, ns, title of item, timestamp, comment, size of contribution.
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (value == JsonToken.VALUE_NUMBER_INT) {
+                if (name.equals("userid")) {
+                    userId = parser.getLongValue();
+                } else if (name.equals("pageid")) {
+                    pageId = parser.getLongValue();
+                } else if (name.equals("revid")) {
+                    revId = parser.getLongValue();
+                } else if (name.equals("parentid")) {
+                    parentId = parser.getLongValue();
+                } else if (name.equals("ns")) {
+                    ns = parser.getIntValue();
+                } else if (name.equals("size")) {
+                    size = parser.getIntValue();
+                }
+            } else if (value == JsonToken.VALUE_STRING) {
+                if (name.equals("user")) {
+                    user = parser.getText();
+                } else if (name.equals("title")) {
+                    title = parser.getText();
+                } else if (name.equals("timestamp")) {
+                    timestamp = parser.getText();
+                } else if (name.equals("comment")) {
+                    comment = parser.getText();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return new Contribution(userId, user, pageId, revId, parentId, ns, title, timestamp, comment, size);
+    }
+
+    // Reads the "continue" object (the parser is at its START_OBJECT) and returns the uccontinue token.
+    private static String readContinue(JsonParser parser) throws IOException {
+        String token = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals("uccontinue") && value == JsonToken.VALUE_STRING) {
+                token = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return token;
+    }
+}
@@ -0,0 +1,96 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @author csarasua
+ * JSON factory and object mapper shared by everything that reads responses of the Wikidata API.
+ * Both are thread-safe once configured, and creating them is expensive, so they are created only once.
+ * The streaming readers of responses (e.g. UserContribsReader) read the outer object of a response with readResponse,
+ * which handles the "error" member that the API writes instead of the result of a request.
+ */
+public final class WikidataJson {
+
+    // Factory of streaming parsers.
+    public static final JsonFactory FACTORY = new JsonFactory();
+
+    // Mapper for the (small) responses that are read as trees; unknown properties are ignored.
+    public static final ObjectMapper MAPPER = new ObjectMapper(FACTORY);
+
+    static {
+        // The callers close their own streams (e.g. to give the connection back to the pool).
+        FACTORY.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+        MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Reader of the members of the outer object of a response (see readResponse).
+     */
+    public interface MemberReader {
+        /**
+         * Reads one member of the outer object.
+         * @param name name of the member.
+         * @param value first token of the value of the member, at which the parser is.
+         * @param parser the parser.
+         * @return true if the value was read completely, false if it must be skipped.
+         * @throws IOException if the value could not be read.
+         */
+        boolean readMember(String name, JsonToken value, JsonParser parser) throws IOException;
+    }
+
+    private WikidataJson() {
+    }
+
+    /**
+     * Reads the outer object of a response of the Wikidata API member by member.
+     * @param in the body of the response (it is not closed).
+     * @param reader reader of the members (the "error" member is not given to it).
+     * @throws IOException if the response could not be read or the API answered with an error.
+     */
+    public static void readResponse(InputStream in, MemberReader reader) throws IOException {
+
+        JsonParser parser = FACTORY.createJsonParser(in);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("The response of the Wikidata API is not a JSON object");
+            }
+
+            //most outer level
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if (name.equals("error") && value == JsonToken.START_OBJECT) {
+                    throw new IOException("The Wikidata API answered with an error: " + readError(parser));
+                } else if (!reader.readMember(name, value, parser)) {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    // Reads the "error" object (the parser is at its START_OBJECT) and returns its code and information.
+    private static String readError(JsonParser parser) throws IOException {
+        String code = null;
+        String info = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals("code") && value == JsonToken.VALUE_STRING) {
+                code = parser.getText();
+            } else if (name.equals("info") && value == JsonToken.VALUE_STRING) {
+                info = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return code + " (" + info + ")";
+    }
+}
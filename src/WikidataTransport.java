@@ -0,0 +1,151 @@
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+
+/**
+ * @author csarasua
+ * Class to send all the HTTP requests to Wikidata through one shared HTTP client.
+ * The connections are pooled and kept alive between requests, and the responses are asked gzip-compressed and
+ * decompressed while they are read.
+ * The entity of every response obtained with execute has to be released with release (also when it is not read).
+ */
+public class WikidataTransport {
+
+    // Default timeouts (milliseconds) and maximum number of connections.
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+    // User agent sent to the Wikidata API (required by the Wikimedia User-Agent policy).
+    static final String USER_AGENT = "DSSenwikidata (https://github.com/criscod/DSSenwikidata)";
+
+    // Transport shared by all the callers.
+    private static WikidataTransport shared;
+
+    private final PoolingClientConnectionManager connectionManager;
+    private final HttpClient client;
+
+
+    /**
+     * Creates a transport with its own pool of connections.
+     * @param connectTimeout maximum time (ms) to establish a connection.
+     * @param socketTimeout maximum time (ms) waiting for data.
+     * @param maxConnections maximum number of open connections (all of them go to the same host).
+     */
+    public WikidataTransport(int connectTimeout, int socketTimeout, int maxConnections) {
+
+        this.connectionManager = new PoolingClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+        HttpConnectionParams.setSoTimeout(params, socketTimeout);
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        HttpProtocolParams.setUserAgent(params, USER_AGENT);
+
+        // The default client keeps the connections alive as long as the server allows it;
+        // the decompressing client adds "Accept-Encoding: gzip,deflate" and decompresses the content as a stream.
+        this.client = new DecompressingHttpClient(new DefaultHttpClient(this.connectionManager, params));
+    }
+
+    /**
+     * Gets the transport shared by all the callers (created with the default configuration if it was not configured).
+     * @return the shared transport.
+     */
+    public static synchronized WikidataTransport getShared() {
+        if (shared == null) {
+            shared = new WikidataTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_SOCKET_TIMEOUT, DEFAULT_MAX_CONNECTIONS);
+        }
+        return shared;
+    }
+
+    /**
+     * Creates the shared transport with the given configuration. It has to be called before the first request: a
+     * transport that may be in use is never replaced.
+     * @param connectTimeout maximum time (ms) to establish a connection.
+     * @param socketTimeout maximum time (ms) waiting for data.
+     * @param maxConnections maximum number of open connections.
+     * @throws IllegalStateException if the shared transport was already created.
+     */
+    public static synchronized void configure(int connectTimeout, int socketTimeout, int maxConnections) {
+        if (shared != null) {
+            throw new IllegalStateException("The shared transport is already in use: it has to be configured before the first request");
+        }
+        shared = new WikidataTransport(connectTimeout, socketTimeout, maxConnections);
+    }
+
+    /**
+     * Closes the shared transport and all its connections.
+     */
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.shutdown();
+            shared = null;
+        }
+    }
+
+    /**
+     * Executes a request.
+     * @param request the HTTP request.
+     * @return the response, whose entity has to be released with release.
+     * @throws IOException if the request could not be executed.
+     */
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        return this.client.execute(request);
+    }
+
+    /**
+     * Consumes the rest of the entity of a response so that its connection goes back to the pool.
+     * @param response the response to release (it may be null).
+     */
+    public void release(HttpResponse response) {
+        if (response != null) {
+            try {
+                EntityUtils.consume(response.getEntity());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Closes the connection of a response without reading the rest of its entity (e.g. a stream that does not end). It
+     * may be called from another thread, and the reading of the entity then fails. The entity has to be asked without
+     * compression ("Accept-Encoding: identity"): the content of a decompressed entity is just closed.
+     * @param response the response to abort (it may be null).
+     */
+    public void abort(HttpResponse response) {
+        if (response != null && response.getEntity() != null) {
+            HttpEntity entity = response.getEntity();
+            try {
+                if (entity instanceof ConnectionReleaseTrigger) {
+                    ((ConnectionReleaseTrigger) entity).abortConnection();
+                } else {
+                    entity.getContent().close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Closes all the connections of this transport.
+     */
+    public void shutdown() {
+        this.connectionManager.shutdown();
+    }
+}